@@ -0,0 +1,112 @@
+package it.smartcommunitylab.minionotificationsmanager.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.mqtt.MqttMessageHandler;
+import it.smartcommunitylab.minionotificationsmanager.mqtt.MqttPublisher;
+import it.smartcommunitylab.minionotificationsmanager.mqtt.MqttPublisherPool;
+import it.smartcommunitylab.minionotificationsmanager.routing.BucketRoutes;
+import it.smartcommunitylab.minionotificationsmanager.service.NotificationService;
+
+/*
+ * Full handling of a recorded Minio notification, from raw bytes to publish
+ * publishes complete immediately on a loopback client, no broker involved
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark {
+
+    @Param({ "10", "1000" })
+    public int subscriptions;
+
+    @Param({ "0", "100" })
+    public int batch;
+
+    private MqttMessageHandler handler;
+    private MqttMessage message;
+    private LoopbackClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, MqttException {
+        // ensure the recorded record matches at least one route
+        List<Event> events = Subscriptions.events(subscriptions);
+        Event e = new Event();
+        e.setBucket(Subscriptions.BUCKET);
+        e.setActions(Collections.singletonList("s3:ObjectCreated:*"));
+        e.setPrefix("images/");
+        e.setSuffix(".jpg");
+        events.add(e);
+
+        BucketRoutes routes = BucketRoutes.build(Subscriptions.BUCKET, events);
+        NotificationService service = new NotificationService() {
+            @Override
+            public BucketRoutes getRoutes(String bucket) {
+                return Subscriptions.BUCKET.equals(bucket) ? routes : BucketRoutes.EMPTY;
+            }
+        };
+
+        client = new LoopbackClient();
+        MqttPublisherPool pool = new MqttPublisherPool(
+                Collections.singletonList(new MqttPublisher(client, 0, 100, 10000)));
+
+        handler = new MqttMessageHandler(pool, service, "minio/notifications", batch, 0);
+        message = new MqttMessage(Subscriptions.resource("minio-put-event.json"));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws MqttException {
+        handler.shutdown();
+        client.close();
+    }
+
+    @Benchmark
+    public void messageArrived() throws Exception {
+        handler.messageArrived("minio/notifications", message);
+    }
+
+    /*
+     * Never connected, every publish completes immediately
+     */
+    private static final class LoopbackClient extends MqttAsyncClient {
+        private LoopbackClient() throws MqttException {
+            super("tcp://localhost:1883", "jmh-loopback", null);
+        }
+
+        @Override
+        public IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext,
+                IMqttActionListener callback) {
+            MqttDeliveryToken token = new MqttDeliveryToken(getClientId());
+            token.setUserContext(userContext);
+            callback.onSuccess(token);
+            return token;
+        }
+    }
+}
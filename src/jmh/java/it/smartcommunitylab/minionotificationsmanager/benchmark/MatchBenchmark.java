@@ -0,0 +1,95 @@
+package it.smartcommunitylab.minionotificationsmanager.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.routing.BucketRoutes;
+import it.smartcommunitylab.minionotificationsmanager.routing.Route;
+
+/*
+ * Matching one record against all subscriptions of a bucket
+ * linear scan via matchesAction/matchesPrefix/matchesSuffix against the compiled matcher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({ "10", "100", "1000" })
+    public int subscriptions;
+
+    private List<EventDTO> dtos;
+    private BucketRoutes routes;
+    private String[] keys;
+    private String[] actions;
+    private int i = 0;
+
+    @Setup
+    public void setup() {
+        List<Event> events = Subscriptions.events(subscriptions);
+        dtos = new ArrayList<>();
+        for (Event e : events) {
+            dtos.add(EventDTO.fromEvent(e));
+        }
+        routes = BucketRoutes.build(Subscriptions.BUCKET, events);
+        keys = Subscriptions.keys(SAMPLES);
+        actions = Subscriptions.actions(SAMPLES);
+    }
+
+    @Benchmark
+    public void scanEvents(Blackhole bh) {
+        int n = (i++) & (SAMPLES - 1);
+        String action = actions[n];
+        String key = keys[n];
+        for (EventDTO dto : dtos) {
+            if (dto.matchesAction(action) && dto.matchesPrefix(key) && dto.matchesSuffix(key)) {
+                bh.consume(dto);
+            }
+        }
+    }
+
+    @Benchmark
+    public void scanRoutes(Blackhole bh) {
+        int n = (i++) & (SAMPLES - 1);
+        String action = actions[n];
+        String key = keys[n];
+        for (Route route : routes.getRoutes()) {
+            if (route.matches(action, key)) {
+                bh.consume(route);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Route> compiled() {
+        int n = (i++) & (SAMPLES - 1);
+        return routes.match(actions[n], keys[n]);
+    }
+
+    @Benchmark
+    public BucketRoutes build() {
+        // cost of a rebuild after a change
+        return BucketRoutes.build(Subscriptions.BUCKET, Subscriptions.events(subscriptions));
+    }
+}
@@ -0,0 +1,96 @@
+package it.smartcommunitylab.minionotificationsmanager.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+
+/*
+ * Realistic subscription sets and object keys, deterministic across runs
+ */
+final class Subscriptions {
+
+    static final String BUCKET = "test";
+
+    static final String[][] ACTIONS = {
+            { "s3:ObjectCreated:*" },
+            { "s3:ObjectCreated:Put" },
+            { "s3:ObjectCreated:Put", "s3:ObjectCreated:CompleteMultipartUpload" },
+            { "s3:ObjectRemoved:*" },
+            { "s3:ObjectCreated:*", "s3:ObjectRemoved:*" },
+            { "s3:ObjectAccessed:Get" }
+    };
+
+    static final String[] FOLDERS = { "", "images/", "images/2020/", "docs/", "docs/reports/", "backup/",
+            "logs/app/", "uploads/user-" };
+
+    static final String[] EXTENSIONS = { "", ".jpg", ".png", ".pdf", ".csv", ".log", ".tar.gz" };
+
+    static final String[] EVENTS = { "s3:ObjectCreated:Put", "s3:ObjectCreated:CompleteMultipartUpload",
+            "s3:ObjectRemoved:Delete", "s3:ObjectAccessed:Get" };
+
+    private Subscriptions() {
+    }
+
+    static List<Event> events(int count) {
+        Random random = new Random(42);
+        List<Event> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Event e = new Event();
+            e.setBucket(BUCKET);
+            e.setActions(Arrays.asList(ACTIONS[random.nextInt(ACTIONS.length)]));
+            // mostly folders, some per user prefixes to grow the trie
+            String prefix = FOLDERS[random.nextInt(FOLDERS.length)];
+            if (prefix.endsWith("-")) {
+                prefix = prefix + String.valueOf(random.nextInt(count));
+            }
+            e.setPrefix(prefix);
+            e.setSuffix(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            list.add(e);
+        }
+        return list;
+    }
+
+    static String[] keys(int count) {
+        Random random = new Random(7);
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            String folder = FOLDERS[random.nextInt(FOLDERS.length)];
+            if (folder.endsWith("-")) {
+                folder = folder + String.valueOf(random.nextInt(1000)) + "/";
+            }
+            keys[i] = folder + "object-" + String.valueOf(random.nextInt(100000))
+                    + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+        }
+        return keys;
+    }
+
+    static String[] actions(int count) {
+        Random random = new Random(11);
+        String[] actions = new String[count];
+        for (int i = 0; i < count; i++) {
+            actions[i] = EVENTS[random.nextInt(EVENTS.length)];
+        }
+        return actions;
+    }
+
+    static byte[] resource(String name) throws IOException {
+        try (InputStream in = Subscriptions.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IOException("missing resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package it.smartcommunitylab.minionotificationsmanager.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import io.minio.MinioClient;
+import io.minio.messages.NotificationConfiguration;
+import it.smartcommunitylab.minionotificationsmanager.minio.MinioBridge;
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/*
+ * Full export of every bucket against a local Minio stand-in
+ * a client per call, as before pooling, against the shared pooled client
+ * each bucket is one config read and one write
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncBenchmark {
+
+    private static final String QUEUE = "arn:minio:sqs::1:webhook";
+    private static final String REGION = "us-east-1";
+    private static final String ACCESS_KEY = "minio";
+    private static final String SECRET_KEY = "minio123";
+
+    @Param({ "10", "50" })
+    public int buckets;
+
+    @Param({ "20" })
+    public int events;
+
+    private MockWebServer server;
+    private MinioClient shared;
+    private MinioBridge bridge;
+
+    private List<String> names;
+    private List<List<EventDTO>> targets;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String config = config(events);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("GET".equals(request.getMethod()) && request.getPath().contains("notification")) {
+                    return new MockResponse().setResponseCode(200)
+                            .setHeader("Content-Type", "application/xml")
+                            .setBody(config);
+                }
+
+                // writes and existence checks
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        server.start();
+
+        names = new ArrayList<>();
+        targets = new ArrayList<>();
+        for (int i = 0; i < buckets; i++) {
+            String bucket = "bucket-" + String.valueOf(i);
+            names.add(bucket);
+
+            // drop the first registration, add a new one: one write per bucket
+            List<EventDTO> list = new ArrayList<>();
+            for (int j = 1; j <= events; j++) {
+                list.add(event(bucket, j));
+            }
+            targets.add(list);
+        }
+
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(16, 300, TimeUnit.SECONDS))
+                .build();
+        shared = new MinioClient(server.getHostName(), server.getPort(), ACCESS_KEY, SECRET_KEY, REGION, false,
+                httpClient);
+
+        bridge = new MinioBridge();
+        set(bridge, "ENDPOINT", server.getHostName());
+        set(bridge, "PORT", server.getPort());
+        set(bridge, "SECURE", false);
+        set(bridge, "REGION", REGION);
+        set(bridge, "ACCESS_KEY", ACCESS_KEY);
+        set(bridge, "SECRET_KEY", SECRET_KEY);
+        set(bridge, "QUEUE", QUEUE);
+        set(bridge, "HTTP_MAX_IDLE", 16);
+        set(bridge, "HTTP_KEEP_ALIVE", 300L);
+        set(bridge, "HTTP_CONNECT_TIMEOUT", 10000L);
+        set(bridge, "HTTP_READ_TIMEOUT", 60000L);
+        set(bridge, "HTTP_WRITE_TIMEOUT", 60000L);
+        // no cache and no write window, every sync hits the server
+        set(bridge, "CACHE_TTL", 0L);
+        set(bridge, "CACHE_SIZE", 1000);
+        set(bridge, "WRITER_WINDOW", 0L);
+        set(bridge, "WRITER_THREADS", 4);
+        bridge.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        bridge.cleanup();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int clientPerCall() throws Exception {
+        // as before pooling, a new client and connection pool for every call
+        int count = 0;
+        for (String bucket : names) {
+            NotificationConfiguration c = client().getBucketNotification(bucket);
+            client().setBucketNotification(bucket, c);
+            count += c.queueConfigurationList().size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int sharedClient() throws Exception {
+        int count = 0;
+        for (String bucket : names) {
+            NotificationConfiguration c = shared.getBucketNotification(bucket);
+            shared.setBucketNotification(bucket, c);
+            count += c.queueConfigurationList().size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int bridgeSetEvents() throws Exception {
+        // export path, diff and write via the shared client
+        int count = 0;
+        for (int i = 0; i < names.size(); i++) {
+            bridge.setEvents(names.get(i), targets.get(i), true);
+            count += targets.get(i).size();
+        }
+        return count;
+    }
+
+    private MinioClient client() throws Exception {
+        return new MinioClient(server.getHostName(), server.getPort(), ACCESS_KEY, SECRET_KEY, REGION, false);
+    }
+
+    private static EventDTO event(String bucket, int i) {
+        EventDTO e = new EventDTO();
+        e.setBucket(bucket);
+        e.setActions(new String[] { Subscriptions.EVENTS[i % Subscriptions.EVENTS.length] });
+        e.setPrefix("folder-" + String.valueOf(i) + "/");
+        e.setSuffix(suffix(i));
+        e.buildTopic();
+        return e;
+    }
+
+    private static String suffix(int i) {
+        // skip the empty extension, every registration has both rules
+        return Subscriptions.EXTENSIONS[1 + i % (Subscriptions.EXTENSIONS.length - 1)];
+    }
+
+    private static String config(int count) {
+        // registrations 0 to count-1, in minio notification format
+        StringBuilder sb = new StringBuilder();
+        sb.append("<NotificationConfiguration xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        for (int i = 0; i < count; i++) {
+            sb.append("<QueueConfiguration>")
+                    .append("<Id>").append(i).append("</Id>")
+                    .append("<Queue>").append(QUEUE).append("</Queue>")
+                    .append("<Event>").append(Subscriptions.EVENTS[i % Subscriptions.EVENTS.length]).append("</Event>")
+                    .append("<Filter><S3Key>")
+                    .append("<FilterRule><Name>prefix</Name><Value>folder-").append(i).append("/</Value></FilterRule>")
+                    .append("<FilterRule><Name>suffix</Name><Value>")
+                    .append(suffix(i))
+                    .append("</Value></FilterRule>")
+                    .append("</S3Key></Filter>")
+                    .append("</QueueConfiguration>");
+        }
+        sb.append("</NotificationConfiguration>");
+        return sb.toString();
+    }
+
+    private static void set(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,77 @@
+package it.smartcommunitylab.minionotificationsmanager.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.model.StringListConverter;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicBenchmark {
+
+    private Event event;
+    private Event stored;
+    private String[] actions;
+    private List<String> list;
+    private String column;
+
+    private final StringListConverter converter = new StringListConverter();
+
+    @Setup
+    public void setup() {
+        event = Subscriptions.events(1).get(0);
+        event.setActions(Arrays.asList(Subscriptions.ACTIONS[2]));
+        actions = event.getActions().toArray(new String[0]);
+
+        // as loaded from database, topic already persisted
+        stored = Subscriptions.events(1).get(0);
+        stored.buildTopic();
+
+        list = event.getActions();
+        column = converter.convertToDatabaseColumn(list);
+    }
+
+    @Benchmark
+    public String buildTopic() {
+        return EventDTO.buildTopic(event.getBucket(), actions, event.getPrefix(), event.getSuffix());
+    }
+
+    @Benchmark
+    public EventDTO fromEvent() {
+        // hashes topic when missing
+        return EventDTO.fromEvent(event);
+    }
+
+    @Benchmark
+    public EventDTO fromStoredEvent() {
+        return EventDTO.fromEvent(stored);
+    }
+
+    @Benchmark
+    public List<String> converterRoundTrip() {
+        return converter.convertToEntityAttribute(converter.convertToDatabaseColumn(list));
+    }
+
+    @Benchmark
+    public List<String> converterRead() {
+        return converter.convertToEntityAttribute(column);
+    }
+}
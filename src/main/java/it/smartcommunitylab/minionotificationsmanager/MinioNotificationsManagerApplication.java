@@ -51,7 +51,7 @@ public class MinioNotificationsManagerApplication {
             // check if sync requested
             if (syncExport) {
                 try {
-                    service.syncToMinio(syncExportClear);
+                    service.syncToMinio(syncExportClear, syncHaltOnErrors);
                 } catch (SystemException ex) {
                     if (syncHaltOnErrors) {
                         // stop
@@ -62,7 +62,7 @@ public class MinioNotificationsManagerApplication {
 
             if (syncImport) {
                 try {
-                    service.syncFromMinio(syncImportClear);
+                    service.syncFromMinio(syncImportClear, syncHaltOnErrors);
                 } catch (SystemException ex) {
                     if (syncHaltOnErrors) {
                         // stop
@@ -50,7 +50,8 @@ public class ResourceServerConfiguration extends WebSecurityConfigurerAdapter {
     protected void configure(HttpSecurity http) throws Exception {
         if (authenticate) {
             http.authorizeRequests()
-                    .antMatchers("/api/**").authenticated()
+                    .antMatchers("/actuator/health").permitAll()
+                    .antMatchers("/api/**", "/actuator/**").authenticated()
                     .and().httpBasic()
                     .and().csrf().disable();
 
@@ -24,8 +24,8 @@ public class WebConfiguration implements WebMvcConfigurer {
         registry.addMapping("/**")
                 .allowedOrigins("*")
                 .allowedMethods("POST", "GET", "PUT", "OPTIONS", "DELETE")
-                .allowedHeaders("Content-Type", "X-Total-Count", "Authorization")
-                .exposedHeaders("X-Total-Count");
+                .allowedHeaders("Content-Type", "X-Total-Count", "Authorization", "If-None-Match")
+                .exposedHeaders("X-Total-Count", "ETag");
     }
 
     @Override
@@ -0,0 +1,83 @@
+package it.smartcommunitylab.minionotificationsmanager.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+
+/*
+ * Incremental writer for events, as a JSON array or as newline delimited JSON
+ * each event is serialized as soon as it is written, nothing is retained
+ */
+final class EventStreamWriter implements Closeable {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String NDJSON_FORMAT = "ndjson";
+
+    private final JsonGenerator generator;
+    private final boolean ndjson;
+
+    private EventStreamWriter(JsonGenerator generator, boolean ndjson) {
+        this.generator = generator;
+        this.ndjson = ndjson;
+    }
+
+    static EventStreamWriter json(ObjectMapper mapper, OutputStream out) throws IOException {
+        JsonGenerator generator = create(mapper, out);
+        generator.writeStartArray();
+        return new EventStreamWriter(generator, false);
+    }
+
+    static EventStreamWriter ndjson(ObjectMapper mapper, OutputStream out) throws IOException {
+        JsonGenerator generator = create(mapper, out);
+        // root values separated by newlines
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        return new EventStreamWriter(generator, true);
+    }
+
+    static EventStreamWriter of(ObjectMapper mapper, OutputStream out, boolean ndjson) throws IOException {
+        return ndjson ? ndjson(mapper, out) : json(mapper, out);
+    }
+
+    static boolean isNdjson(String format) {
+        return NDJSON_FORMAT.equalsIgnoreCase(format);
+    }
+
+    static MediaType mediaType(boolean ndjson) {
+        return ndjson ? MediaType.parseMediaType(NDJSON) : MediaType.APPLICATION_JSON;
+    }
+
+    private static JsonGenerator create(ObjectMapper mapper, OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out);
+        // response stream is owned by the container
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    void write(EventDTO event) {
+        try {
+            generator.writeObject(event);
+        } catch (IOException e) {
+            // client gone, abort the producer
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ndjson) {
+            generator.writeRaw('\n');
+        } else {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+}
@@ -2,7 +2,9 @@ package it.smartcommunitylab.minionotificationsmanager.controller;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
@@ -11,25 +13,35 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.minio.messages.EventType;
 import it.smartcommunitylab.minionotificationsmanager.common.InvalidArgumentException;
 import it.smartcommunitylab.minionotificationsmanager.common.NoSuchBucketException;
 import it.smartcommunitylab.minionotificationsmanager.common.NoSuchEventException;
 import it.smartcommunitylab.minionotificationsmanager.common.SystemException;
+import it.smartcommunitylab.minionotificationsmanager.model.BatchResult;
 import it.smartcommunitylab.minionotificationsmanager.model.Event;
 import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.model.SyncPlan;
 import it.smartcommunitylab.minionotificationsmanager.service.NotificationService;
 
 @RestController
@@ -40,17 +52,40 @@ public class EventsController {
     @Autowired
     NotificationService service;
 
+    @Autowired
+    ObjectMapper mapper;
+
+    @Value("${batch.maxSize}")
+    private int BATCH_MAX_SIZE;
+
     @GetMapping(value = "/api/events/{bucket}", produces = "application/json")
     @ResponseBody
     public List<EventDTO> list(
             @PathVariable("bucket") String bucket,
             HttpServletRequest request, HttpServletResponse response,
-            Pageable pageable) throws SystemException {
+            Pageable pageable) throws InvalidArgumentException, SystemException {
 
         _log.debug("list events for " + bucket);
 
-        long total = service.countEvents(bucket);
-        List<Event> events = service.listEvents(bucket);
+        // conditional request, answer 304 before reading from database
+        // etag is per instance, never matches across replicas
+        String etag = service.getVersion(bucket);
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return null;
+        }
+
+        List<Event> events;
+        long total;
+
+        // page only when requested, otherwise list all as before
+        if (request.getParameter("page") != null || request.getParameter("size") != null) {
+            Page<Event> page = service.listEvents(bucket, pageable);
+            events = page.getContent();
+            total = page.getTotalElements();
+        } else {
+            events = service.listEvents(bucket, pageable.getSort());
+            total = events.size();
+        }
 
         // add total count as header
         response.setHeader("X-Total-Count", String.valueOf(total));
@@ -59,6 +94,32 @@ public class EventsController {
         return events.stream().map(e -> EventDTO.fromEvent(e)).collect(Collectors.toList());
     }
 
+    @GetMapping(value = "/api/events/{bucket}", params = "stream")
+    public ResponseEntity<StreamingResponseBody> listStream(
+            @PathVariable("bucket") String bucket,
+            @RequestParam("stream") String format,
+            HttpServletRequest request, HttpServletResponse response) throws SystemException {
+        return stream(bucket, EventStreamWriter.isNdjson(format));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(String bucket, boolean ndjson) throws SystemException {
+        _log.debug("stream events for " + bucket);
+
+        long total = service.countEvents(bucket);
+
+        // read via cursor while writing, memory is bound to a single event
+        StreamingResponseBody body = out -> {
+            try (EventStreamWriter writer = EventStreamWriter.of(mapper, out, ndjson)) {
+                service.streamEvents(bucket, e -> writer.write(EventDTO.fromEvent(e)));
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(total))
+                .contentType(EventStreamWriter.mediaType(ndjson))
+                .body(body);
+    }
+
     @PostMapping(value = "/api/events/{bucket}", produces = "application/json")
     @ResponseBody
     public EventDTO add(
@@ -70,6 +131,20 @@ public class EventsController {
         // override bucket in body with path value
         event.setBucket(bucket);
 
+        // will throw exception if invalid
+        validate(event);
+
+        _log.debug("add event for bucket " + bucket + " for actions " + Arrays.toString(event.getActions()));
+
+        // add via service
+        Event e = service.addEvent(event.getBucket(), event.getActions(), event.getPrefix(), event.getSuffix());
+
+        // return as DTO to strip private fields and populate topic name
+        return EventDTO.fromEvent(e);
+
+    }
+
+    private void validate(EventDTO event) throws InvalidArgumentException {
         if (!event.isValid()) {
             throw new InvalidArgumentException("missing fields");
         }
@@ -80,15 +155,6 @@ public class EventsController {
         } catch (io.minio.errors.InvalidArgumentException eax) {
             throw new InvalidArgumentException(eax.getMessage());
         }
-
-        _log.debug("add event for bucket " + bucket + " for actions " + Arrays.toString(event.getActions()));
-
-        // add via service
-        Event e = service.addEvent(event.getBucket(), event.getActions(), event.getPrefix(), event.getSuffix());
-
-        // return as DTO to strip private fields and populate topic name
-        return EventDTO.fromEvent(e);
-
     }
 
     @GetMapping(value = "/api/events/{bucket}/{id}", produces = "application/json")
@@ -125,6 +191,93 @@ public class EventsController {
         return EventDTO.fromEvent(e);
     }
 
+    /*
+     * Batch
+     */
+
+    @PostMapping(value = "/api/events/{bucket}/batch", produces = "application/json")
+    @ResponseBody
+    public List<BatchResult> addBatch(
+            @PathVariable("bucket") String bucket,
+            @RequestBody List<EventDTO> events,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, NoSuchBucketException, SystemException {
+
+        if (events.size() > BATCH_MAX_SIZE) {
+            throw new InvalidArgumentException("too many events, max " + String.valueOf(BATCH_MAX_SIZE));
+        }
+
+        _log.debug("add " + String.valueOf(events.size()) + " events for bucket " + bucket);
+
+        // validate all in one pass, results by position
+        BatchResult[] results = new BatchResult[events.size()];
+        List<EventDTO> valid = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            EventDTO event = events.get(i);
+            if (event == null) {
+                results[i] = BatchResult.error(i, BatchResult.INVALID, null, "missing event");
+                continue;
+            }
+
+            // override bucket in body with path value
+            event.setBucket(bucket);
+            try {
+                validate(event);
+                valid.add(event);
+                positions.add(i);
+            } catch (InvalidArgumentException ex) {
+                results[i] = BatchResult.error(i, BatchResult.INVALID, null, ex.getMessage());
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            // add via service, single transaction and single write to minio
+            List<Event> added = service.addEvents(bucket, valid);
+            for (int j = 0; j < added.size(); j++) {
+                int i = positions.get(j);
+                results[i] = BatchResult.of(i, BatchResult.CREATED, EventDTO.fromEvent(added.get(j)));
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    @DeleteMapping(value = "/api/events/{bucket}/batch", produces = "application/json")
+    @ResponseBody
+    public List<BatchResult> deleteBatch(
+            @PathVariable("bucket") String bucket,
+            @RequestBody List<Long> ids,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, SystemException {
+
+        if (ids.size() > BATCH_MAX_SIZE) {
+            throw new InvalidArgumentException("too many events, max " + String.valueOf(BATCH_MAX_SIZE));
+        }
+
+        _log.debug("delete " + String.valueOf(ids.size()) + " events for bucket " + bucket);
+
+        // delete via service, events not in bucket are ignored
+        List<Long> list = ids.stream().filter(id -> id != null).collect(Collectors.toList());
+        Map<Long, Event> deleted = new HashMap<>();
+        for (Event e : service.deleteEvents(bucket, list)) {
+            deleted.put(e.getId(), e);
+        }
+
+        List<BatchResult> results = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            Event e = id != null ? deleted.get(id) : null;
+            if (e != null) {
+                results.add(BatchResult.of(i, BatchResult.DELETED, EventDTO.fromEvent(e)));
+            } else {
+                results.add(BatchResult.error(i, BatchResult.NOT_FOUND, id, "no such event"));
+            }
+        }
+
+        return results;
+    }
+
     /*
      * Sync
      */
@@ -167,6 +320,84 @@ public class EventsController {
 
     }
 
+    @PostMapping(value = "/api/events/{bucket}/import", params = "stream")
+    public ResponseEntity<StreamingResponseBody> importFromMinioStream(
+            @PathVariable("bucket") String bucket,
+            @RequestParam("stream") String format,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, NoSuchBucketException, SystemException {
+
+        // disable clear
+        boolean clear = false;
+        _log.debug("import all events for bucket " + bucket);
+
+        // sync before responding, errors are reported as status
+        List<Event> events = service.syncFromMinio(bucket, clear);
+        return streamResults(events, EventStreamWriter.isNdjson(format));
+    }
+
+    @PostMapping(value = "/api/events/{bucket}/export", params = "stream")
+    public ResponseEntity<StreamingResponseBody> exportToMinioStream(
+            @PathVariable("bucket") String bucket,
+            @RequestParam("stream") String format,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, NoSuchBucketException, SystemException {
+
+        // disable clear
+        boolean clear = false;
+        _log.debug("export all events for bucket " + bucket);
+
+        // sync before responding, errors are reported as status
+        List<Event> events = service.syncToMinio(bucket, clear);
+        return streamResults(events, EventStreamWriter.isNdjson(format));
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamResults(List<Event> events, boolean ndjson) {
+        // convert to DTO while writing, one at a time
+        StreamingResponseBody body = out -> {
+            try (EventStreamWriter writer = EventStreamWriter.of(mapper, out, ndjson)) {
+                for (Event e : events) {
+                    writer.write(EventDTO.fromEvent(e));
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(events.size()))
+                .contentType(EventStreamWriter.mediaType(ndjson))
+                .body(body);
+    }
+
+    @GetMapping(value = "/api/events/{bucket}/import/plan", produces = "application/json")
+    @ResponseBody
+    public SyncPlan importPlan(
+            @PathVariable("bucket") String bucket,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, NoSuchBucketException, SystemException {
+
+        // same as import, disable clear
+        boolean clear = false;
+        _log.debug("plan import of events for bucket " + bucket);
+
+        // dry run via service, nothing is written
+        return service.planFromMinio(bucket, clear);
+    }
+
+    @GetMapping(value = "/api/events/{bucket}/export/plan", produces = "application/json")
+    @ResponseBody
+    public SyncPlan exportPlan(
+            @PathVariable("bucket") String bucket,
+            HttpServletRequest request, HttpServletResponse response)
+            throws InvalidArgumentException, NoSuchBucketException, SystemException {
+
+        // same as export, disable clear
+        boolean clear = false;
+        _log.debug("plan export of events for bucket " + bucket);
+
+        // dry run via service, nothing is written
+        return service.planToMinio(bucket, clear);
+    }
+
     /*
      * Types
      */
@@ -0,0 +1,57 @@
+package it.smartcommunitylab.minionotificationsmanager.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Timers around calls to Minio and to the repository, tagged by method and outcome
+ */
+@Aspect
+@Component
+public class CallMetricsAspect {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // timers per method and outcome, registered once
+    private final Map<String, Timer> minioTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> repositoryTimers = new ConcurrentHashMap<>();
+
+    @Around("execution(public * it.smartcommunitylab.minionotificationsmanager.minio.MinioBridge.*(..))")
+    public Object minio(ProceedingJoinPoint pjp) throws Throwable {
+        return time("minio.calls", minioTimers, pjp);
+    }
+
+    @Around("this(it.smartcommunitylab.minionotificationsmanager.repository.EventRepository)")
+    public Object repository(ProceedingJoinPoint pjp) throws Throwable {
+        return time("repository.calls", repositoryTimers, pjp);
+    }
+
+    private Object time(String name, Map<String, Timer> timers, ProceedingJoinPoint pjp) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return pjp.proceed();
+        } catch (Throwable t) {
+            exception = t.getClass().getSimpleName();
+            throw t;
+        } finally {
+            String method = pjp.getSignature().getName();
+            String tag = exception;
+            Timer timer = timers.computeIfAbsent(method + "/" + tag, k -> Timer.builder(name)
+                    .tag("method", method)
+                    .tag("exception", tag)
+                    .register(registry));
+            sample.stop(timer);
+        }
+    }
+}
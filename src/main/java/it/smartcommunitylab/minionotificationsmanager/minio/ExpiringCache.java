@@ -0,0 +1,70 @@
+package it.smartcommunitylab.minionotificationsmanager.minio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Small LRU cache with time to live, size bounded
+ * a non positive ttl disables caching
+ */
+public class ExpiringCache<K, V> {
+
+    private final long ttl;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    public ExpiringCache(final int size, long ttlMillis) {
+        this.ttl = ttlMillis;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) {
+            return null;
+        }
+
+        if (e.expires < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+
+        return e.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (ttl <= 0) {
+            return;
+        }
+
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
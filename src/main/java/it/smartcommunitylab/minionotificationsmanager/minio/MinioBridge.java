@@ -5,11 +5,22 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +45,9 @@ import io.minio.messages.FilterRule;
 import io.minio.messages.NotificationConfiguration;
 import io.minio.messages.QueueConfiguration;
 import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.model.SyncPlan;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 
 @Component
 public class MinioBridge {
@@ -60,14 +74,84 @@ public class MinioBridge {
     @Value("${minio.queue}")
     private String QUEUE;
 
+    @Value("${minio.http.maxIdleConnections}")
+    private int HTTP_MAX_IDLE;
+
+    @Value("${minio.http.keepAlive}")
+    private long HTTP_KEEP_ALIVE;
+
+    @Value("${minio.http.connectTimeout}")
+    private long HTTP_CONNECT_TIMEOUT;
+
+    @Value("${minio.http.readTimeout}")
+    private long HTTP_READ_TIMEOUT;
+
+    @Value("${minio.http.writeTimeout}")
+    private long HTTP_WRITE_TIMEOUT;
+
+    @Value("${minio.cache.ttl}")
+    private long CACHE_TTL;
+
+    @Value("${minio.cache.size}")
+    private int CACHE_SIZE;
+
+    @Value("${minio.writer.window}")
+    private long WRITER_WINDOW;
+
+    @Value("${minio.writer.threads}")
+    private int WRITER_THREADS;
+
+    // shared client, reuses http connections and tls sessions
+    private volatile MinioClient client;
+
+    // per bucket notification config and existence, refreshed on our writes
+    private ExpiringCache<String, NotificationConfiguration> notifications;
+    private ExpiringCache<String, Boolean> buckets;
+
+    // serializes and coalesces config updates per bucket
+    private NotificationWriter writer;
+
+    @PostConstruct
+    public void init() {
+        notifications = new ExpiringCache<>(CACHE_SIZE, TimeUnit.SECONDS.toMillis(CACHE_TTL));
+        buckets = new ExpiringCache<>(CACHE_SIZE, TimeUnit.SECONDS.toMillis(CACHE_TTL));
+        writer = new NotificationWriter(new NotificationWriter.Store() {
+            @Override
+            public NotificationConfiguration read(String bucket) throws MinioException {
+                return readNotification(bucket);
+            }
+
+            @Override
+            public void write(String bucket, NotificationConfiguration notificationConfiguration)
+                    throws MinioException {
+                writeNotification(bucket, notificationConfiguration);
+            }
+        }, WRITER_WINDOW, WRITER_THREADS);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        writer.shutdown();
+    }
+
     /*
      * Buckets
      */
 
     public boolean hasBucket(String name) throws MinioException {
+        // only existence is cached, new buckets are always checked
+        if (buckets.get(name) != null) {
+            return true;
+        }
+
         try {
             MinioClient minio = getClient(name);
-            return minio.bucketExists(name);
+            boolean exists = minio.bucketExists(name);
+            if (exists) {
+                buckets.put(name, Boolean.TRUE);
+            }
+
+            return exists;
         } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
                 | NoSuchAlgorithmException | InsufficientDataException
                 | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
@@ -80,7 +164,12 @@ public class MinioBridge {
     public List<String> listBuckets() throws MinioException {
         try {
             MinioClient minio = getClient();
-            return minio.listBuckets().stream().map(b -> b.name()).collect(Collectors.toList());
+            List<String> names = minio.listBuckets().stream().map(b -> b.name()).collect(Collectors.toList());
+            for (String name : names) {
+                buckets.put(name, Boolean.TRUE);
+            }
+
+            return names;
         } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
                 | NoSuchAlgorithmException | InsufficientDataException
                 | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
@@ -95,100 +184,63 @@ public class MinioBridge {
      */
 
     public void registerEvent(EventDTO event) throws MinioException {
-        try {
-            String bucket = event.getBucket();
-            MinioClient minio = getClient(bucket);
-
-            // get current notificationConfiguration for bucket
-            NotificationConfiguration notificationConfiguration = minio.getBucketNotification(bucket);
-            List<QueueConfiguration> queueConfigurationList = notificationConfiguration.queueConfigurationList();
+        await(registerEventAsync(event));
+    }
 
+    public CompletableFuture<Void> registerEventAsync(EventDTO event) {
+        return writer.submit(event.getBucket(), (bucket, queueConfigurationList) -> {
             // search for duplicates
-            QueueConfiguration queueConfiguration = null;
             for (QueueConfiguration qc : queueConfigurationList) {
                 // derive event mapping
-                EventDTO e = queueConfigurationToEvent(bucket, qc);
-//                _log.debug("compare " + event.toString() + " to " + e.toString());
-
-                if (QUEUE.equals(qc.queue()) && event.equals(e)) {
+                if (QUEUE.equals(qc.queue()) && event.equals(queueConfigurationToEvent(bucket, qc))) {
                     // duplicate
-                    queueConfiguration = qc;
-                    break;
+                    return false;
                 }
             }
 
-            if (queueConfiguration == null) {
-                // build as new
-                queueConfiguration = eventToQueueConfiguration(event);
-                queueConfiguration.setQueue(QUEUE);
+            // build as new
+            QueueConfiguration queueConfiguration = eventToQueueConfiguration(event);
+            queueConfiguration.setQueue(QUEUE);
+            queueConfigurationList.add(queueConfiguration);
 
-                queueConfigurationList.add(queueConfiguration);
-                notificationConfiguration.setQueueConfigurationList(queueConfigurationList);
+            return true;
+        });
+    }
 
-                // Set updated notification configuration.
-                minio.setBucketNotification(bucket, notificationConfiguration);
-            }
-        } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
-                | InvalidObjectPrefixException | NoSuchAlgorithmException | InsufficientDataException
-                | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
-                | IOException | XmlPullParserException | InvalidArgumentException e) {
-            e.printStackTrace();
-            throw new MinioException(e);
-        }
+    public void unregisterEvent(EventDTO event) throws MinioException {
+        await(unregisterEventAsync(event));
+    }
 
+    public CompletableFuture<Void> unregisterEventAsync(EventDTO event) {
+        return unregisterEventsAsync(event.getBucket(), Collections.singletonList(event));
     }
 
-    public void unregisterEvent(EventDTO event) throws MinioException {
-        try {
-            String bucket = event.getBucket();
-            MinioClient minio = getClient(bucket);
+    public void unregisterEvents(String bucket, Collection<EventDTO> events) throws MinioException {
+        await(unregisterEventsAsync(bucket, events));
+    }
 
-            // get current notificationConfiguration for bucket
-            NotificationConfiguration notificationConfiguration = minio.getBucketNotification(bucket);
-            List<QueueConfiguration> queueConfigurationList = notificationConfiguration.queueConfigurationList();
+    public CompletableFuture<Void> unregisterEventsAsync(String bucket, Collection<EventDTO> events) {
+        // match on topics, as derived from configurations
+        Set<String> topics = new HashSet<>();
+        for (EventDTO e : events) {
+            topics.add(e.getTopic());
+        }
 
-            // iterate over all configurations to find a match for event
-            // multiple checks to minimize work to de-serialize configuration
-            for (QueueConfiguration queueConfiguration : queueConfigurationList) {
-                // first match queue
-                if (QUEUE.equals(queueConfiguration.queue())) {
-                    List<EventType> eventList = EventType.fromStringList(Arrays.asList(event.getActions()));
-                    // match event types
-                    if (new HashSet<>(eventList).equals(new HashSet<>(queueConfiguration.events()))) {
-                        // match attributes
-                        // need to recover s3 rules from filter
-                        List<FilterRule> rules = queueConfiguration.filter().s3Key().filterRuleList();
-                        String prefix = "";
-                        String suffix = "";
-                        for (FilterRule filterRule : rules) {
-                            if ("prefix".equals(filterRule.name())) {
-                                prefix = filterRule.value();
-                            }
-                            if ("suffix".equals(filterRule.name())) {
-                                suffix = filterRule.value();
-                            }
-                        }
-
-                        if (event.getPrefix().equals(prefix) && event.getSuffix().equals(suffix)) {
-                            // match, remove
-                            queueConfigurationList.remove(queueConfiguration);
-                        }
-                    }
+        return writer.submit(bucket, (b, queueConfigurationList) -> {
+            // single pass over all configurations to find matches
+            boolean changed = false;
+            Iterator<QueueConfiguration> iter = queueConfigurationList.iterator();
+            while (iter.hasNext()) {
+                QueueConfiguration qc = iter.next();
+                if (QUEUE.equals(qc.queue()) && topics.contains(queueConfigurationToEvent(b, qc).getTopic())) {
+                    // match, remove
+                    iter.remove();
+                    changed = true;
                 }
             }
 
-            // update minio
-            notificationConfiguration.setQueueConfigurationList(queueConfigurationList);
-            minio.setBucketNotification(bucket, notificationConfiguration);
-
-        } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
-                | InvalidObjectPrefixException | NoSuchAlgorithmException | InsufficientDataException
-                | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
-                | IOException | XmlPullParserException | InvalidArgumentException e) {
-            e.printStackTrace();
-            throw new MinioException(e);
-        }
-
+            return changed;
+        });
     }
 
     /*
@@ -199,8 +251,8 @@ public class MinioBridge {
         try {
             MinioClient minio = getClient(bucket);
 
-            // get current notificationConfiguration for bucket
-            NotificationConfiguration notificationConfiguration = minio.getBucketNotification(bucket);
+            // get current notificationConfiguration for bucket, read only
+            NotificationConfiguration notificationConfiguration = getNotification(minio, bucket);
             List<QueueConfiguration> queueConfigurationList = notificationConfiguration.queueConfigurationList();
 
             List<EventDTO> events = new ArrayList<>();
@@ -224,56 +276,105 @@ public class MinioBridge {
     }
 
     public void setEvents(String bucket, List<EventDTO> events, boolean deleteExisting) throws MinioException {
-        try {
-            MinioClient minio = getClient(bucket);
-
-            // get current notificationConfiguration for bucket
-            NotificationConfiguration notificationConfiguration = minio.getBucketNotification(bucket);
-            List<QueueConfiguration> queueConfigurationList = notificationConfiguration.queueConfigurationList();
-
-            if (deleteExisting) {
-                for (QueueConfiguration qc : queueConfigurationList) {
-                    if (QUEUE.equals(qc.queue())) {
-                        queueConfigurationList.remove(qc);
-                    }
-                }
-            }
+        await(setEventsAsync(bucket, events, deleteExisting));
+    }
 
-            // search for duplicates
+    public CompletableFuture<Void> setEventsAsync(String bucket, List<EventDTO> events, boolean deleteExisting) {
+        return writer.submit(bucket, (b, queueConfigurationList) -> {
+            // derive event mapping for our queue, once per config
+            Map<QueueConfiguration, String> topics = new IdentityHashMap<>();
             List<EventDTO> current = new ArrayList<>();
             for (QueueConfiguration qc : queueConfigurationList) {
                 if (QUEUE.equals(qc.queue())) {
-                    // derive event mapping
-                    EventDTO e = queueConfigurationToEvent(bucket, qc);
+                    EventDTO e = queueConfigurationToEvent(b, qc);
+                    topics.put(qc, e.getTopic());
                     current.add(e);
                 }
             }
 
-            // dedup via set to clear local duplicates
-            Set<EventDTO> toSet = new HashSet<>();
-            toSet.addAll(events);
+            SyncPlan plan = SyncPlan.of(b, events, current, deleteExisting);
+            _log.debug("set events " + plan.toString());
 
-            // dedup via single pass
-            List<EventDTO> toAdd = new ArrayList<>();
-            for (EventDTO e : toSet) {
-                if (!current.contains(e)) {
-                    toAdd.add(e);
-                }
-            }
+            // single pass removal, dropping duplicates of the same topic when clearing
+            Set<String> seen = new HashSet<>();
+            boolean changed = queueConfigurationList.removeIf(qc -> {
+                String topic = topics.get(qc);
+                return topic != null && (plan.isRemoved(topic) || (deleteExisting && !seen.add(topic)));
+            });
 
             // build new configs
-            for (EventDTO e : toAdd) {
-                // build as new
+            for (EventDTO e : plan.getAdd()) {
                 QueueConfiguration queueConfiguration = eventToQueueConfiguration(e);
                 queueConfiguration.setQueue(QUEUE);
                 queueConfigurationList.add(queueConfiguration);
+                changed = true;
             }
 
-            notificationConfiguration.setQueueConfigurationList(queueConfigurationList);
+            return changed;
+        });
+    }
+
+    public SyncPlan planEvents(String bucket, List<EventDTO> events, boolean deleteExisting) throws MinioException {
+        // dry run of setEvents
+        return SyncPlan.of(bucket, events, getEvents(bucket), deleteExisting);
+    }
+
+    /*
+     * Notification config, cached for reads only
+     */
+
+    private NotificationConfiguration getNotification(MinioClient minio, String bucket)
+            throws InvalidKeyException, InvalidBucketNameException, InvalidObjectPrefixException,
+            NoSuchAlgorithmException, InsufficientDataException, NoResponseException, ErrorResponseException,
+            InternalException, InvalidResponseException, IOException, XmlPullParserException {
+        // cached config is shared, callers must copy before changing
+        NotificationConfiguration notificationConfiguration = notifications.get(bucket);
+        if (notificationConfiguration == null) {
+            notificationConfiguration = minio.getBucketNotification(bucket);
+            notifications.put(bucket, notificationConfiguration);
+        }
 
-            // Set updated notification configuration.
+        return notificationConfiguration;
+    }
+
+    private void setNotification(MinioClient minio, String bucket, NotificationConfiguration notificationConfiguration)
+            throws InvalidKeyException, InvalidBucketNameException, InvalidObjectPrefixException,
+            NoSuchAlgorithmException, InsufficientDataException, NoResponseException, ErrorResponseException,
+            InternalException, InvalidResponseException, IOException, XmlPullParserException,
+            InvalidArgumentException {
+        try {
             minio.setBucketNotification(bucket, notificationConfiguration);
+            // written config is now current
+            notifications.put(bucket, notificationConfiguration);
+        } catch (Exception e) {
+            // state unknown, fetch again on next access
+            notifications.invalidate(bucket);
+            throw e;
+        }
+    }
+
+    private NotificationConfiguration readNotification(String bucket) throws MinioException {
+        try {
+            MinioClient minio = getClient(bucket);
+            // base for read-modify-write, always fresh to keep changes made elsewhere
+            NotificationConfiguration notificationConfiguration = minio.getBucketNotification(bucket);
+            notifications.put(bucket, notificationConfiguration);
+
+            return copy(notificationConfiguration);
+        } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
+                | InvalidObjectPrefixException | NoSuchAlgorithmException | InsufficientDataException
+                | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
+                | IOException | XmlPullParserException e) {
+            e.printStackTrace();
+            throw new MinioException(e);
+        }
+    }
 
+    private void writeNotification(String bucket, NotificationConfiguration notificationConfiguration)
+            throws MinioException {
+        try {
+            MinioClient minio = getClient(bucket);
+            setNotification(minio, bucket, notificationConfiguration);
         } catch (InvalidEndpointException | InvalidPortException | InvalidKeyException | InvalidBucketNameException
                 | InvalidObjectPrefixException | NoSuchAlgorithmException | InsufficientDataException
                 | NoResponseException | ErrorResponseException | InternalException | InvalidResponseException
@@ -281,7 +382,35 @@ public class MinioBridge {
             e.printStackTrace();
             throw new MinioException(e);
         }
+    }
 
+    private void await(CompletableFuture<Void> future) throws MinioException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MinioException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MinioException) {
+                throw (MinioException) e.getCause();
+            }
+            throw new MinioException(e.getCause());
+        }
+    }
+
+    private NotificationConfiguration copy(NotificationConfiguration notificationConfiguration)
+            throws XmlPullParserException {
+        // shallow copy of lists, configurations are never changed in place
+        NotificationConfiguration c = new NotificationConfiguration();
+        c.setCloudFunctionConfigurationList(copy(notificationConfiguration.cloudFunctionConfigurationList()));
+        c.setQueueConfigurationList(copy(notificationConfiguration.queueConfigurationList()));
+        c.setTopicConfigurationList(copy(notificationConfiguration.topicConfigurationList()));
+
+        return c;
+    }
+
+    private <T> List<T> copy(List<T> list) {
+        return list != null ? new ArrayList<>(list) : new ArrayList<>();
     }
 
     /*
@@ -297,14 +426,34 @@ public class MinioBridge {
 
     private MinioClient getClient() throws InvalidEndpointException, InvalidPortException {
         // use global credentials
-        _log.debug("create client for " + ENDPOINT + ":" + String.valueOf(PORT) + " with accessKey " + ACCESS_KEY);
-        if (StringUtils.isEmpty(REGION)) {
-            return new MinioClient(ENDPOINT, PORT, ACCESS_KEY, SECRET_KEY, REGION, SECURE);
-        } else {
-            return new MinioClient(ENDPOINT, PORT, ACCESS_KEY, SECRET_KEY, SECURE);
-
+        MinioClient c = client;
+        if (c == null) {
+            synchronized (this) {
+                c = client;
+                if (c == null) {
+                    c = createClient();
+                    client = c;
+                }
+            }
         }
 
+        return c;
+    }
+
+    private MinioClient createClient() throws InvalidEndpointException, InvalidPortException {
+        _log.debug("create client for " + ENDPOINT + ":" + String.valueOf(PORT) + " with accessKey " + ACCESS_KEY);
+
+        // pooled http client with keep-alive
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(HTTP_MAX_IDLE, HTTP_KEEP_ALIVE, TimeUnit.SECONDS))
+                .connectTimeout(HTTP_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(HTTP_READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(HTTP_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        String region = StringUtils.isEmpty(REGION) ? null : REGION;
+        return new MinioClient(ENDPOINT, PORT, ACCESS_KEY, SECRET_KEY, region, SECURE, httpClient);
     }
 
     /*
@@ -0,0 +1,177 @@
+package it.smartcommunitylab.minionotificationsmanager.minio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmlpull.v1.XmlPullParserException;
+
+import io.minio.errors.InvalidArgumentException;
+import io.minio.messages.NotificationConfiguration;
+import io.minio.messages.QueueConfiguration;
+
+/*
+ * Serial writer for bucket notification configs
+ * changes submitted within the window are applied with a single read and write per bucket
+ * buckets are flushed in parallel, each bucket one flush at a time
+ */
+public class NotificationWriter {
+    private final static Logger _log = LoggerFactory.getLogger(NotificationWriter.class);
+
+    private final Store store;
+    private final long window;
+
+    private final Map<String, BucketQueue> queues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public NotificationWriter(Store store, long window, int threads) {
+        _log.debug("create writer with window " + String.valueOf(window) + " threads " + String.valueOf(threads));
+        this.store = store;
+        this.window = window;
+
+        final AtomicInteger count = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "minio-writer-" + String.valueOf(count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<Void> submit(String bucket, Change change) {
+        PendingChange p = new PendingChange(change);
+        BucketQueue q = queues.computeIfAbsent(bucket, b -> new BucketQueue(b));
+
+        synchronized (q) {
+            q.pending.add(p);
+            if (!q.scheduled) {
+                try {
+                    scheduler.schedule(() -> flush(q), window, TimeUnit.MILLISECONDS);
+                    q.scheduled = true;
+                } catch (RejectedExecutionException e) {
+                    q.pending.remove(p);
+                    p.future.completeExceptionally(new MinioException("writer is shut down"));
+                }
+            }
+        }
+
+        return p.future;
+    }
+
+    public void shutdown() {
+        _log.debug("shutdown writer");
+        // delayed flushes still run after shutdown
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(BucketQueue q) {
+        // a flush started meanwhile holds the lock, changes wait for the next round
+        synchronized (q.lock) {
+            List<PendingChange> batch;
+            synchronized (q) {
+                batch = q.pending;
+                q.pending = new ArrayList<>();
+                q.scheduled = false;
+            }
+
+            if (!batch.isEmpty()) {
+                apply(q.bucket, batch);
+            }
+        }
+    }
+
+    private void apply(String bucket, List<PendingChange> batch) {
+        _log.debug("apply " + String.valueOf(batch.size()) + " changes to " + bucket);
+
+        List<PendingChange> applied = new ArrayList<>();
+        try {
+            NotificationConfiguration notificationConfiguration = store.read(bucket);
+            List<QueueConfiguration> queueConfigurationList = notificationConfiguration.queueConfigurationList();
+
+            boolean changed = false;
+            for (PendingChange p : batch) {
+                // each change works on a copy, kept only on success
+                // configurations are never modified in place, a shallow copy is enough
+                List<QueueConfiguration> attempt = new ArrayList<>(queueConfigurationList);
+                try {
+                    if (p.change.apply(bucket, attempt)) {
+                        queueConfigurationList = attempt;
+                        changed = true;
+                    }
+                    applied.add(p);
+                } catch (InvalidArgumentException | XmlPullParserException e) {
+                    // invalid change, skip only this one along with its partial edits
+                    p.future.completeExceptionally(new MinioException(e));
+                }
+            }
+
+            if (changed) {
+                notificationConfiguration.setQueueConfigurationList(queueConfigurationList);
+                store.write(bucket, notificationConfiguration);
+            }
+
+            for (PendingChange p : applied) {
+                p.future.complete(null);
+            }
+        } catch (Exception e) {
+            _log.error("error writing notifications for " + bucket + ": " + e.getMessage());
+            MinioException ex = (e instanceof MinioException) ? (MinioException) e : new MinioException(e);
+            for (PendingChange p : batch) {
+                p.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /*
+     * Change to the queue configurations of a bucket, applied to a private copy
+     * returns true when the list was modified, edits are discarded on errors
+     */
+    @FunctionalInterface
+    public interface Change {
+        public boolean apply(String bucket, List<QueueConfiguration> queueConfigurationList)
+                throws InvalidArgumentException, XmlPullParserException;
+    }
+
+    /*
+     * Backing store, read returns a config the writer can modify
+     */
+    public interface Store {
+        public NotificationConfiguration read(String bucket) throws MinioException;
+
+        public void write(String bucket, NotificationConfiguration notificationConfiguration) throws MinioException;
+    }
+
+    private static final class BucketQueue {
+        private final String bucket;
+        private final Object lock = new Object();
+
+        private List<PendingChange> pending = new ArrayList<>();
+        private boolean scheduled = false;
+
+        private BucketQueue(String bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    private static final class PendingChange {
+        private final Change change;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingChange(Change change) {
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package it.smartcommunitylab.minionotificationsmanager.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.minio.messages.EventType;
+
+/*
+ * Bitmask representation of actions, one bit per minio event type
+ * wildcards are expanded when building masks for registrations
+ * so matching an inbound event name is a single bit test
+ */
+public final class ActionMask {
+
+    public static final String WILDCARD = ":*";
+
+    private static final EventType[] TYPES = EventType.values();
+
+    // registration masks, with wildcards expanded
+    private static final Map<String, Long> ACTIONS = new HashMap<>();
+
+    // inbound event masks, a single bit for known types
+    private static final Map<String, Long> EVENTS = new HashMap<>();
+
+    // wildcard prefixes and bits, for event names unknown to the client
+    private static final List<String> WILDCARDS = new ArrayList<>();
+    private static final List<Long> WILDCARD_BITS = new ArrayList<>();
+
+    // cache resolved unknown names, bounded
+    private static final int MAX_UNKNOWN = 64;
+    private static final Map<String, Long> UNKNOWN = new ConcurrentHashMap<>();
+
+    static {
+        if (TYPES.length > Long.SIZE) {
+            throw new IllegalStateException("too many event types for action mask");
+        }
+
+        for (int i = 0; i < TYPES.length; i++) {
+            String name = TYPES[i].toString();
+            long bit = 1L << i;
+            EVENTS.put(name, bit);
+
+            long mask = bit;
+            if (name.endsWith(WILDCARD)) {
+                // expand to every type sharing the prefix
+                String prefix = name.substring(0, name.length() - WILDCARD.length());
+                for (int j = 0; j < TYPES.length; j++) {
+                    if (TYPES[j].toString().startsWith(prefix)) {
+                        mask |= 1L << j;
+                    }
+                }
+
+                WILDCARDS.add(prefix);
+                WILDCARD_BITS.add(bit);
+            }
+
+            ACTIONS.put(name, mask);
+        }
+    }
+
+    private ActionMask() {
+    }
+
+    public static long of(String action) {
+        // unknown actions can not match any event
+        Long mask = ACTIONS.get(action);
+        return mask != null ? mask : 0L;
+    }
+
+    public static long of(String[] actions) {
+        long mask = 0L;
+        if (actions != null) {
+            for (String a : actions) {
+                mask |= of(a);
+            }
+        }
+
+        return mask;
+    }
+
+    public static long of(List<String> actions) {
+        long mask = 0L;
+        if (actions != null) {
+            for (String a : actions) {
+                mask |= of(a);
+            }
+        }
+
+        return mask;
+    }
+
+    public static long forEvent(String eventName) {
+        Long mask = EVENTS.get(eventName);
+        if (mask != null) {
+            return mask;
+        }
+
+        mask = UNKNOWN.get(eventName);
+        if (mask != null) {
+            return mask;
+        }
+
+        // event type unknown to client, can match only wildcards
+        long m = 0L;
+        for (int i = 0; i < WILDCARDS.size(); i++) {
+            if (eventName.startsWith(WILDCARDS.get(i))) {
+                m |= WILDCARD_BITS.get(i);
+            }
+        }
+
+        if (UNKNOWN.size() < MAX_UNKNOWN) {
+            UNKNOWN.put(eventName, m);
+        }
+
+        return m;
+    }
+
+    public static int bits() {
+        return TYPES.length;
+    }
+
+}
@@ -0,0 +1,59 @@
+package it.smartcommunitylab.minionotificationsmanager.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * Outcome of a single item in a batch request, by position
+ */
+@JsonInclude(Include.NON_NULL)
+public class BatchResult {
+
+    public static final String CREATED = "created";
+    public static final String DELETED = "deleted";
+    public static final String INVALID = "invalid";
+    public static final String NOT_FOUND = "not_found";
+
+    private final int index;
+    private final String status;
+    private final EventDTO event;
+    private final Long id;
+    private final String error;
+
+    private BatchResult(int index, String status, EventDTO event, Long id, String error) {
+        this.index = index;
+        this.status = status;
+        this.event = event;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static BatchResult of(int index, String status, EventDTO event) {
+        return new BatchResult(index, status, event, event.getId(), null);
+    }
+
+    public static BatchResult error(int index, String status, Long id, String error) {
+        return new BatchResult(index, status, null, id, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public EventDTO getEvent() {
+        return event;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+}
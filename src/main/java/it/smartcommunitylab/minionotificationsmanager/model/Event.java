@@ -12,8 +12,15 @@ import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
+import javax.persistence.Transient;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
@@ -21,11 +28,23 @@ import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "event_bucket_idx", columnList = "bucket"),
+        @Index(name = "event_bucket_topic_idx", columnList = "bucket,topic"),
+        @Index(name = "event_topic_idx", columnList = "topic")
+})
 @EntityListeners({ AuditingEntityListener.class, EventListener.class })
 public class Event {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // ids are reserved in blocks on the default sequence, to enable batch inserts
+    // hilo keeps the sequence increment at 1, compatible with existing databases
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_generator")
+    @GenericGenerator(name = "event_generator", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "hibernate_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "hilo")
+    })
     private long id;
 
     private String bucket;
@@ -37,8 +56,15 @@ public class Event {
     @Convert(converter = StringListConverter.class)
     private List<String> actions;
 
+    // topic hash, computed once at write time
+    private String topic;
+
     private boolean imported;
 
+    // registration to minio handled by the caller, skip listener
+    @Transient
+    private boolean deferred;
+
     /*
      * Audit
      */
@@ -102,6 +128,14 @@ public class Event {
         this.actions = actions;
     }
 
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
     public String getUserId() {
         return userId;
     }
@@ -150,11 +184,28 @@ public class Event {
         this.imported = imported;
     }
 
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void buildTopic() {
+        // hash with the same rules as DTOs, once per write
+        String[] a = actions != null ? actions.toArray(new String[0]) : new String[0];
+        topic = EventDTO.buildTopic(bucket, a, prefix, suffix);
+    }
+
     @Override
     public String toString() {
         return "Event [id=" + id + ", bucket=" + bucket + ", prefix=" + prefix + ", suffix=" + suffix + ", actions="
-                + actions + ", userId=" + userId + ", createdDate=" + createdDate + ", modifiedDate=" + modifiedDate
-                + ", createdBy=" + createdBy + ", lastModifiedBy=" + lastModifiedBy + "]";
+                + actions + ", topic=" + topic + ", userId=" + userId + ", createdDate=" + createdDate
+                + ", modifiedDate=" + modifiedDate + ", createdBy=" + createdBy + ", lastModifiedBy=" + lastModifiedBy
+                + "]";
     }
 
 }
@@ -6,6 +6,8 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class EventDTO {
 
     private long id;
@@ -15,6 +17,10 @@ public class EventDTO {
     private String topic;
     private String[] actions;
 
+    // actions parsed once as bitmask, wildcards expanded
+    @JsonIgnore
+    private long actionMask;
+
     public EventDTO() {
         id = -1;
         bucket = "";
@@ -22,6 +28,7 @@ public class EventDTO {
         suffix = "";
         topic = "";
         actions = new String[0];
+        actionMask = 0L;
     }
 
     public long getId() {
@@ -86,24 +93,21 @@ public class EventDTO {
 
     public void setActions(String[] actions) {
         this.actions = actions;
+        this.actionMask = ActionMask.of(actions);
+    }
+
+    @JsonIgnore
+    public long getActionMask() {
+        return actionMask;
     }
 
     public boolean matchesAction(String action) {
-        // check for wildcard matches
-        for (String a : actions) {
-            // exact match
-            if (a.equals(action)) {
-                return true;
-            }
-            // wildcard match
-            if (a.endsWith(":*")) {
-                if (action.startsWith(a.substring(0, a.length() - 2))) {
-                    return true;
-                }
-            }
-        }
+        // wildcards are expanded in mask, single bit test
+        return matchesAction(ActionMask.forEvent(action));
+    }
 
-        return false;
+    public boolean matchesAction(long eventMask) {
+        return (actionMask & eventMask) != 0;
     }
 
     public boolean matchesPrefix(String key) {
@@ -166,17 +170,20 @@ public class EventDTO {
     }
 
     public void buildTopic() {
+        topic = buildTopic(bucket, actions, prefix, suffix);
+    }
+
+    public static String buildTopic(String bucket, String[] actions, String prefix, String suffix) {
         // build topic name as hash of event properties
         // by design multiple entities describing the same event will result in the same
         // topic
         StringBuilder input = new StringBuilder();
         input.append(bucket);
         // need to fetch actions as SORTED array to be consistent
-        input.append(Arrays.toString(getActions(true)));
-        input.append(prefix).append(suffix);
-
-        topic = bucket + "/ev-" + DigestUtils.md5Hex(input.toString());
+        input.append(Arrays.toString(Arrays.stream(actions).sorted().toArray(String[]::new)));
+        input.append(prefix != null ? prefix : "").append(suffix != null ? suffix : "");
 
+        return bucket + "/ev-" + DigestUtils.md5Hex(input.toString());
     }
 
     public Event toEvent() {
@@ -199,8 +206,12 @@ public class EventDTO {
         dto.setPrefix(event.getPrefix());
         dto.setSuffix(event.getSuffix());
 
-        // build topic
-        dto.buildTopic();
+        // use topic hashed at write time when available
+        if (StringUtils.isNotEmpty(event.getTopic())) {
+            dto.setTopic(event.getTopic());
+        } else {
+            dto.buildTopic();
+        }
 
         return dto;
     }
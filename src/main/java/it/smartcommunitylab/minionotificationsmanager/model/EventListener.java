@@ -29,7 +29,7 @@ public class EventListener {
         // register directly to minio
         // TODO evaluate using applicationEvents via spring to decouple
         try {
-            if (!event.isImported()) {
+            if (!event.isImported() && !event.isDeferred()) {
                 // need to convert event to detach and format
                 minio.registerEvent(EventDTO.fromEvent(event));
             }
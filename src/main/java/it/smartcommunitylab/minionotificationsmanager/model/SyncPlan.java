@@ -0,0 +1,110 @@
+package it.smartcommunitylab.minionotificationsmanager.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/*
+ * Diff between a source and a target set of events, keyed by topic
+ * add: in source but not in target
+ * remove: in target but not in source, only when clearing
+ * keep: in target and left untouched
+ */
+public class SyncPlan {
+
+    private final String bucket;
+    private final Map<String, EventDTO> add;
+    private final Map<String, EventDTO> remove;
+    private final Map<String, EventDTO> keep;
+
+    private SyncPlan(String bucket, Map<String, EventDTO> add, Map<String, EventDTO> remove,
+            Map<String, EventDTO> keep) {
+        this.bucket = bucket;
+        this.add = add;
+        this.remove = remove;
+        this.keep = keep;
+    }
+
+    public static SyncPlan of(String bucket, Collection<EventDTO> source, Collection<EventDTO> target,
+            boolean clear) {
+        // index both sides once, duplicates collapse on topic
+        Map<String, EventDTO> src = index(source);
+        Map<String, EventDTO> add = new LinkedHashMap<>();
+        Map<String, EventDTO> remove = new LinkedHashMap<>();
+        Map<String, EventDTO> keep = new LinkedHashMap<>();
+
+        for (Map.Entry<String, EventDTO> e : index(target).entrySet()) {
+            if (clear && !src.containsKey(e.getKey())) {
+                remove.put(e.getKey(), e.getValue());
+            } else {
+                keep.put(e.getKey(), e.getValue());
+            }
+        }
+
+        for (Map.Entry<String, EventDTO> e : src.entrySet()) {
+            if (!keep.containsKey(e.getKey())) {
+                add.put(e.getKey(), e.getValue());
+            }
+        }
+
+        return new SyncPlan(bucket, add, remove, keep);
+    }
+
+    private static Map<String, EventDTO> index(Collection<EventDTO> events) {
+        Map<String, EventDTO> map = new LinkedHashMap<>();
+        for (EventDTO e : events) {
+            map.putIfAbsent(e.getTopic(), e);
+        }
+        return map;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public List<EventDTO> getAdd() {
+        return new ArrayList<>(add.values());
+    }
+
+    public List<EventDTO> getRemove() {
+        return new ArrayList<>(remove.values());
+    }
+
+    public List<EventDTO> getKeep() {
+        return new ArrayList<>(keep.values());
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return add.isEmpty() && remove.isEmpty();
+    }
+
+    /*
+     * Topics, for membership checks while applying
+     */
+    public boolean isAdded(String topic) {
+        return add.containsKey(topic);
+    }
+
+    public boolean isRemoved(String topic) {
+        return remove.containsKey(topic);
+    }
+
+    @JsonIgnore
+    public Set<String> getRemovedTopics() {
+        return Collections.unmodifiableSet(remove.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return "SyncPlan [bucket=" + bucket + ", add=" + String.valueOf(add.size()) + ", remove="
+                + String.valueOf(remove.size()) + ", keep=" + String.valueOf(keep.size()) + "]";
+    }
+
+}
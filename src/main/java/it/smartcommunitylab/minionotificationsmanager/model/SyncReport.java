@@ -0,0 +1,60 @@
+package it.smartcommunitylab.minionotificationsmanager.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Outcome of a sync over all buckets
+ * results hold the number of events synced per bucket, errors the failure message
+ */
+public class SyncReport {
+
+    private final Map<String, Integer> results = new TreeMap<>();
+    private final Map<String, String> errors = new TreeMap<>();
+    private long duration;
+
+    public void addResult(String bucket, int count) {
+        results.put(bucket, count);
+    }
+
+    public void addError(String bucket, String message) {
+        errors.put(bucket, message);
+    }
+
+    public Map<String, Integer> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    public Map<String, String> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public int getCount() {
+        int c = 0;
+        for (Integer i : results.values()) {
+            c += i;
+        }
+        return c;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncReport [buckets=" + String.valueOf(results.size() + errors.size()) + ", events="
+                + String.valueOf(getCount()) + ", errors=" + String.valueOf(errors.size()) + ", duration="
+                + String.valueOf(duration) + "ms]";
+    }
+
+}
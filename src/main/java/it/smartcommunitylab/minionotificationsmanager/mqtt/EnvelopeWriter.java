@@ -0,0 +1,96 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Outbound envelope encoder, copies raw json values without re-encoding
+ * buffers are reused per thread, only the exact-size result is allocated
+ */
+final class EnvelopeWriter {
+
+    private static final byte[] EVENT_NAME = "{\"EventName\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY = ",\"Key\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RECORDS = ",\"Records\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = "\"\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private EnvelopeWriter() {
+    }
+
+    // envelope with a single record
+    static byte[] write(NotificationPayload json, int i) {
+        Buffer out = BUFFER.get();
+        out.reset();
+        header(out, json);
+        record(out, json, i);
+        out.write(CLOSE, 0, CLOSE.length);
+
+        // client keeps a reference until delivery, hand out an exact copy
+        return out.toByteArray();
+    }
+
+    // envelope with many records, header taken from the first one
+    static byte[] write(NotificationPayload[] payloads, int[] records, int count) {
+        Buffer out = BUFFER.get();
+        out.reset();
+        header(out, payloads[0]);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.write(SEPARATOR, 0, SEPARATOR.length);
+            }
+            record(out, payloads[i], records[i]);
+        }
+        out.write(CLOSE, 0, CLOSE.length);
+
+        return out.toByteArray();
+    }
+
+    private static void header(Buffer out, NotificationPayload json) {
+        byte[] data = json.getData();
+        out.write(EVENT_NAME, 0, EVENT_NAME.length);
+        if (json.hasEventName()) {
+            out.write(data, json.getEventNameFrom(), json.getEventNameTo() - json.getEventNameFrom());
+        } else {
+            out.write(EMPTY, 0, EMPTY.length);
+        }
+        out.write(KEY, 0, KEY.length);
+        if (json.hasKey()) {
+            out.write(data, json.getKeyFrom(), json.getKeyTo() - json.getKeyFrom());
+        } else {
+            out.write(EMPTY, 0, EMPTY.length);
+        }
+        out.write(RECORDS, 0, RECORDS.length);
+    }
+
+    private static void record(Buffer out, NotificationPayload json, int i) {
+        out.write(json.getData(), json.getRecordFrom(i), json.getRecordTo(i) - json.getRecordFrom(i));
+    }
+
+    /*
+     * Growable buffer, unsynchronized and reused per thread
+     */
+    private static final class Buffer {
+        private byte[] buf = new byte[4096];
+        private int len = 0;
+
+        private void reset() {
+            len = 0;
+        }
+
+        private void write(byte[] b, int off, int l) {
+            if (len + l > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + l));
+            }
+            System.arraycopy(b, off, buf, len, l);
+            len += l;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Records routed to the same destination, to be sent as a single message
+ */
+final class MqttBatch {
+
+    private final String destination;
+
+    private NotificationPayload[] payloads = new NotificationPayload[8];
+    private int[] records = new int[8];
+    private int count = 0;
+
+    // set once flushed, no more records accepted
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    MqttBatch(String destination) {
+        this.destination = destination;
+    }
+
+    String getDestination() {
+        return destination;
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    boolean close() {
+        // only the first caller gets to publish
+        return closed.compareAndSet(false, true);
+    }
+
+    int size() {
+        return count;
+    }
+
+    void add(NotificationPayload json, int i) {
+        if (count == records.length) {
+            payloads = Arrays.copyOf(payloads, count * 2);
+            records = Arrays.copyOf(records, count * 2);
+        }
+
+        payloads[count] = json;
+        records[count] = i;
+        count++;
+    }
+
+    byte[] encode() {
+        return EnvelopeWriter.write(payloads, records, count);
+    }
+
+}
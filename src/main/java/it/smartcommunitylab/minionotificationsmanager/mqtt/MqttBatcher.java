@@ -0,0 +1,130 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Accumulates records per destination over a time window
+ * batches are flushed when full or when the window elapses
+ */
+public class MqttBatcher {
+    private final static Logger _log = LoggerFactory.getLogger(MqttBatcher.class);
+
+    private final int size;
+    private final long window;
+    private final BiConsumer<String, byte[]> sink;
+
+    private final Map<String, MqttBatch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean shutdown = false;
+
+    public MqttBatcher(int size, long window, BiConsumer<String, byte[]> sink) {
+        _log.debug("create batcher with size " + String.valueOf(size) + " window " + String.valueOf(window));
+        this.size = size;
+        this.window = window;
+        this.sink = sink;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mqtt-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void add(String dest, NotificationPayload json, int i) {
+        if (shutdown) {
+            // no more timers, send right away
+            MqttBatch batch = new MqttBatch(dest);
+            batch.add(json, i);
+            batch.close();
+            publish(batch);
+            return;
+        }
+
+        MqttBatch full = null;
+        MqttBatch current;
+        while (true) {
+            current = pending.computeIfAbsent(dest, d -> open(d));
+            synchronized (current) {
+                if (current.isClosed()) {
+                    // flushed concurrently, retry with a new one
+                    continue;
+                }
+
+                current.add(json, i);
+                if (current.size() >= size && close(current)) {
+                    full = current;
+                }
+            }
+            break;
+        }
+
+        if (full != null) {
+            publish(full);
+        } else if (shutdown) {
+            // raced with shutdown, batch may have no timer
+            flush(current);
+        }
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+        _log.debug("shutdown batcher with " + String.valueOf(pending.size()) + " pending batches");
+        shutdown = true;
+        scheduler.shutdownNow();
+
+        // flush everything left
+        List<MqttBatch> batches = new ArrayList<>(pending.values());
+        for (MqttBatch batch : batches) {
+            flush(batch);
+        }
+    }
+
+    private MqttBatch open(String dest) {
+        MqttBatch batch = new MqttBatch(dest);
+        try {
+            scheduler.schedule(() -> flush(batch), window, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rex) {
+            // shutting down, flushed by caller
+        }
+        return batch;
+    }
+
+    private boolean close(MqttBatch batch) {
+        if (!batch.close()) {
+            return false;
+        }
+
+        pending.remove(batch.getDestination(), batch);
+        return true;
+    }
+
+    private void flush(MqttBatch batch) {
+        // lock excludes concurrent adds, closed flag excludes concurrent flushes
+        synchronized (batch) {
+            if (!close(batch)) {
+                return;
+            }
+        }
+
+        publish(batch);
+    }
+
+    private void publish(MqttBatch batch) {
+        if (batch.size() > 0) {
+            sink.accept(batch.getDestination(), batch.encode());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Bounded hand-off from the paho callback thread to a set of workers
+ * each worker is a single thread lane, notifications are assigned to lanes
+ * by bucket and object key so the same object is always handled in order
+ */
+public class MqttIngestionQueue implements IMqttMessageListener {
+    private final static Logger _log = LoggerFactory.getLogger(MqttIngestionQueue.class);
+
+    public enum Policy {
+        BLOCK, DROP_OLDEST, REJECT;
+
+        public static Policy parse(String value) {
+            return Policy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final MqttMessageHandler handler;
+    private final ThreadPoolExecutor[] lanes;
+    private final Policy policy;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    public MqttIngestionQueue(MqttMessageHandler h, int workers, int capacity, Policy p) {
+        _log.debug("create ingestion queue with " + String.valueOf(workers) + " workers, capacity "
+                + String.valueOf(capacity) + " policy " + p.toString());
+        handler = h;
+        policy = p;
+
+        // capacity is split evenly between lanes
+        int n = Math.max(1, workers);
+        int laneCapacity = Math.max(1, (capacity + n - 1) / n);
+        WorkerThreadFactory factory = new WorkerThreadFactory();
+        BackpressureHandler backpressure = new BackpressureHandler();
+        lanes = new ThreadPoolExecutor[n];
+        for (int i = 0; i < n; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity), factory, backpressure);
+            lanes[i].prestartAllCoreThreads();
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        // parse routing fields here to pick the lane, handled once by workers
+        NotificationPayload json;
+        try {
+            json = handler.parse(message.getPayload());
+        } catch (RuntimeException ex) {
+            _log.error("error parsing message for topic " + topic + ": " + ex.getMessage());
+            return;
+        }
+
+        // decouple from paho callback thread
+        lane(json).execute(() -> {
+            try {
+                handler.handle(json);
+            } catch (Exception ex) {
+                _log.error("error handling message for topic " + topic + ": " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private ThreadPoolExecutor lane(NotificationPayload json) {
+        if (lanes.length == 1 || json.size() == 0) {
+            return lanes[0];
+        }
+
+        // minio sends a single record per notification, use the first
+        String bucket = json.getBucket(0);
+        String key = json.getObjectKey(0);
+        int hash = (bucket != null ? bucket.hashCode() : 0) * 31 + (key != null ? key.hashCode() : 0);
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void shutdown() {
+        _log.debug("shutdown ingestion queue with " + String.valueOf(getQueueDepth()) + " pending messages");
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+
+        try {
+            // shared deadline for all lanes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            for (ThreadPoolExecutor lane : lanes) {
+                long left = Math.max(0L, deadline - System.nanoTime());
+                if (!lane.awaitTermination(left, TimeUnit.NANOSECONDS)) {
+                    _log.warn("ingestion queue not drained, discard " + String.valueOf(lane.getQueue().size())
+                            + " messages");
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class BackpressureHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            if (e.isShutdown()) {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            BlockingQueue<Runnable> queue = e.getQueue();
+            switch (policy) {
+            case BLOCK:
+                // stall the paho thread, broker will hold the backlog
+                try {
+                    queue.put(r);
+                } catch (InterruptedException iex) {
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case DROP_OLDEST:
+                // make room by discarding the head of the same lane
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+                if (!queue.offer(r)) {
+                    dropped.incrementAndGet();
+                }
+                break;
+            case REJECT:
+            default:
+                dropped.incrementAndGet();
+                _log.warn("ingestion queue full, reject message");
+                break;
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "mqtt-router-" + String.valueOf(count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -1,19 +1,18 @@
 package it.smartcommunitylab.minionotificationsmanager.mqtt;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
-import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.routing.BucketRoutes;
+import it.smartcommunitylab.minionotificationsmanager.routing.Route;
 import it.smartcommunitylab.minionotificationsmanager.service.NotificationService;
 
 public class MqttMessageHandler implements IMqttMessageListener {
@@ -21,80 +20,126 @@ public class MqttMessageHandler implements IMqttMessageListener {
 
     private final NotificationService service;
 
-    private final IMqttAsyncClient client;
+    private final MqttPublisherPool publishers;
 
     private final String TOPIC;
-    private final int QOS;
 
-    public MqttMessageHandler(IMqttAsyncClient c, NotificationService s, String baseTopic, int qos) {
+    // batching, disabled when size is not positive
+    private final int BATCH_SIZE;
+    private final MqttBatcher batcher;
+
+    private final MqttMetrics metrics;
+
+    public MqttMessageHandler(MqttPublisherPool p, NotificationService s, String baseTopic) {
+        this(p, s, baseTopic, 0, 0);
+    }
+
+    public MqttMessageHandler(MqttPublisherPool p, NotificationService s, String baseTopic,
+            int batchSize, long batchWindow) {
+        this(p, s, baseTopic, batchSize, batchWindow, new MqttMetrics());
+    }
+
+    public MqttMessageHandler(MqttPublisherPool p, NotificationService s, String baseTopic,
+            int batchSize, long batchWindow, MqttMetrics m) {
         _log.debug("create message handler with service");
-        client = c;
+        publishers = p;
         service = s;
         TOPIC = baseTopic;
-        QOS = qos;
+        BATCH_SIZE = batchSize;
+        metrics = m;
+
+        if (batchSize > 0 && batchWindow > 0) {
+            // accumulate across messages over time window
+            batcher = new MqttBatcher(batchSize, batchWindow, this::publish);
+        } else {
+            batcher = null;
+        }
     }
 
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception {
         _log.debug("message arrived for topic " + topic);
-        // message is JSON
+        handle(parse(message.getPayload()));
+    }
 
-        String payload = new String(message.getPayload(), "UTF-8");
-        JSONObject json = new JSONObject(payload);
-        _log.trace("dump message " + json.toString(1));
+    public NotificationPayload parse(byte[] payload) {
+        // message is JSON, parse only routing fields from raw bytes
+        if (_log.isTraceEnabled()) {
+            _log.trace("dump message " + new String(payload, StandardCharsets.UTF_8));
+        }
 
-        // extract records
-        JSONArray records = json.getJSONArray("Records");
-        for (int i = 0; i < records.length(); i++) {
-            JSONObject record = records.getJSONObject(i);
-            String action = record.getString("eventName");
+        long start = System.nanoTime();
+        NotificationPayload json = NotificationPayload.parse(payload);
+        metrics.parsed(System.nanoTime() - start, json.size());
+
+        return json;
+    }
+
+    public void handle(NotificationPayload json) {
+        // batches for this message only, when no window is configured
+        Map<Route, MqttBatch> batches = null;
+        if (BATCH_SIZE > 0 && batcher == null) {
+            batches = new LinkedHashMap<>();
+        }
 
-            JSONObject s3 = record.getJSONObject("s3");
-            String bucket = s3.getJSONObject("bucket").getString("name");
-            String key = s3.getJSONObject("object").getString("key");
+        // extract records
+        for (int i = 0; i < json.size(); i++) {
+            String action = json.getAction(i);
+            String bucket = json.getBucket(i);
+            String key = json.getObjectKey(i);
+
+            if (action == null || bucket == null || key == null) {
+                _log.debug("skip invalid record " + String.valueOf(i));
+                continue;
+            }
 
-            _log.debug("receive event " + action + " for bucket " + bucket + " key " + key);
+            if (_log.isDebugEnabled()) {
+                _log.debug("receive event " + action + " for bucket " + bucket + " key " + key);
+            }
 
             try {
-                // cache topics to avoid double sending
-                List<String> topics = new ArrayList<>();
-
-                // fetch all events for bucket
-                List<EventDTO> events = service.listEvents(bucket).stream()
-                        .map(e -> EventDTO.fromEvent(e))
-                        .collect(Collectors.toList());
-
-                // search ALL matches
-                for (EventDTO event : events) {
-                    if (event.matchesAction(action) && event.matchesPrefix(key) && event.matchesSuffix(key)) {
-                        // check if already delivered due to duplicate event registration
-                        if (!topics.contains(event.getTopic())) {
-                            // match, send message to topic
-                            String dest = TOPIC + "/" + event.getTopic();
-
-                            try {
-                                _log.debug("route message to " + dest);
-
-                                // build payload with this single record
-                                JSONObject j = new JSONObject();
-                                j.put("EventName", json.getString("EventName"));
-                                j.put("Key", json.getString("Key"));
-                                JSONArray r = new JSONArray();
-                                r.put(record);
-                                j.put("Records", r);
-
-                                // send with no retain (ie no last will message)
-                                // otherwise clients will receive the last event on new connection
-                                client.publish(dest, j.toString().getBytes(), QOS, false);
-
-                                // register delivery
-                                topics.add(event.getTopic());
-                            } catch (Exception pex) {
-                                _log.error("error routing message to " + dest + ": " + pex.getMessage());
-                                pex.printStackTrace();
-                            }
+                // fetch compiled routes for bucket from memory
+                long t0 = System.nanoTime();
+                BucketRoutes routes = service.getRoutes(bucket);
+                long t1 = System.nanoTime();
+                metrics.lookedUp(t1 - t0);
+
+                // search ALL matches, routes are unique per topic
+                // so no need to track delivered topics
+                List<Route> matches = routes.match(action, key);
+                metrics.matched(System.nanoTime() - t1, matches.size());
+                if (matches.isEmpty()) {
+                    continue;
+                }
+
+                if (batcher != null) {
+                    // delegate to time window batcher
+                    for (Route route : matches) {
+                        batcher.add(route.getDestination(TOPIC), json, i);
+                    }
+                } else if (batches != null) {
+                    // group by route, flush when full
+                    for (Route route : matches) {
+                        MqttBatch batch = batches.get(route);
+                        if (batch == null) {
+                            batch = new MqttBatch(route.getDestination(TOPIC));
+                            batches.put(route, batch);
+                        }
+
+                        batch.add(json, i);
+                        if (batch.size() >= BATCH_SIZE) {
+                            publish(batch.getDestination(), batch.encode());
+                            batches.remove(route);
                         }
                     }
+                } else {
+                    // build payload with this single record once, shared by all destinations
+                    byte[] data = EnvelopeWriter.write(json, i);
+
+                    for (Route route : matches) {
+                        // match, send message to topic
+                        publish(route.getDestination(TOPIC), data);
+                    }
                 }
 
             } catch (Exception ex) {
@@ -103,6 +148,32 @@ public class MqttMessageHandler implements IMqttMessageListener {
             }
 
         }
+
+        if (batches != null) {
+            // send remaining batches
+            for (MqttBatch batch : batches.values()) {
+                publish(batch.getDestination(), batch.encode());
+            }
+        }
+    }
+
+    private void publish(String dest, byte[] data) {
+        if (_log.isDebugEnabled()) {
+            _log.debug("route message to " + dest);
+        }
+
+        // flow controlled, never blocks
+        // same destination always goes through the same connection
+        long start = System.nanoTime();
+        publishers.publish(dest, data);
+        metrics.enqueued(System.nanoTime() - start);
+    }
+
+    public void shutdown() {
+        if (batcher != null) {
+            // flush pending batches
+            batcher.shutdown();
+        }
     }
 
 }
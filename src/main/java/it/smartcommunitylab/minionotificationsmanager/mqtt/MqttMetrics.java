@@ -0,0 +1,68 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Meters for the routing path, one timer per stage
+ * durations are measured by callers with nanoTime to avoid allocations
+ */
+public class MqttMetrics {
+
+    private final Timer parse;
+    private final Timer lookup;
+    private final Timer match;
+    private final Timer enqueue;
+
+    private final Counter messages;
+    private final Counter records;
+    private final Counter matches;
+    private final Counter publishes;
+
+    public MqttMetrics() {
+        // global registry, no-op unless a registry is added
+        this(Metrics.globalRegistry);
+    }
+
+    public MqttMetrics(MeterRegistry registry) {
+        parse = stage(registry, "parse");
+        lookup = stage(registry, "lookup");
+        match = stage(registry, "match");
+        // hand off to publisher queue, delivery is tracked by mqtt.publish.delivered
+        enqueue = stage(registry, "enqueue");
+
+        messages = Counter.builder("mqtt.messages").description("inbound messages").register(registry);
+        records = Counter.builder("mqtt.records").description("inbound records").register(registry);
+        matches = Counter.builder("mqtt.matches").description("matched routes").register(registry);
+        publishes = Counter.builder("mqtt.publishes").description("outbound messages").register(registry);
+    }
+
+    private static Timer stage(MeterRegistry registry, String name) {
+        return Timer.builder("mqtt.stage").tag("stage", name).description("routing stage duration")
+                .register(registry);
+    }
+
+    public void parsed(long nanos, int count) {
+        parse.record(nanos, TimeUnit.NANOSECONDS);
+        messages.increment();
+        records.increment(count);
+    }
+
+    public void lookedUp(long nanos) {
+        lookup.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void matched(long nanos, int count) {
+        match.record(nanos, TimeUnit.NANOSECONDS);
+        matches.increment(count);
+    }
+
+    public void enqueued(long nanos) {
+        enqueue.record(nanos, TimeUnit.NANOSECONDS);
+        publishes.increment();
+    }
+}
@@ -1,14 +1,18 @@
 package it.smartcommunitylab.minionotificationsmanager.mqtt;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
 import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttClient;
@@ -22,6 +26,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.minionotificationsmanager.service.NotificationService;
 
 @Component
@@ -49,12 +56,47 @@ public class MqttNotificationsRouter {
     @Value("${mqtt.qos}")
     private int QOS;
 
+    @Value("${mqtt.share.group}")
+    private String SHARE_GROUP;
+
+    @Value("${mqtt.workers}")
+    private int WORKERS;
+
+    @Value("${mqtt.queue.capacity}")
+    private int QUEUE_CAPACITY;
+
+    @Value("${mqtt.queue.policy}")
+    private String QUEUE_POLICY;
+
+    @Value("${mqtt.batch.enable}")
+    private boolean BATCH_ENABLE;
+
+    @Value("${mqtt.batch.size}")
+    private int BATCH_SIZE;
+
+    @Value("${mqtt.batch.window}")
+    private long BATCH_WINDOW;
+
+    @Value("${mqtt.publish.inflight}")
+    private int PUBLISH_INFLIGHT;
+
+    @Value("${mqtt.publish.capacity}")
+    private int PUBLISH_CAPACITY;
+
+    @Value("${mqtt.publish.clients}")
+    private int PUBLISH_CLIENTS;
+
     @Autowired
     NotificationService service;
 
+    @Autowired
+    MeterRegistry registry;
+
     private IMqttClient _client;
-    private IMqttAsyncClient _aclient;
+    private List<IMqttAsyncClient> _aclients;
+    private MqttPublisherPool publishers;
     private MqttMessageHandler handler;
+    private MqttIngestionQueue queue;
 
     private MqttCallbackExtended callback = new MqttCallbackExtended() {
         @Override
@@ -64,6 +106,11 @@ public class MqttNotificationsRouter {
 
         @Override
         public void messageArrived(String topic, MqttMessage message) throws Exception {
+            // messages for shared subscriptions may not match the listener filter
+            // paho falls back to callback, deliver to the same listener
+            if (!SHARE_GROUP.isEmpty()) {
+                listener().messageArrived(topic, message);
+            }
         }
 
         @Override
@@ -89,23 +136,42 @@ public class MqttNotificationsRouter {
     public void init() {
         _log.debug("init mqtt router");
 
+        // gauges read from live components, zero until connected
+        Gauge.builder("mqtt.queue.depth", this, r -> r.getQueueDepth())
+                .description("messages waiting in ingestion queue").register(registry);
+        Gauge.builder("mqtt.publish.inflight", this, r -> r.getInflight())
+                .description("publishes awaiting delivery token").register(registry);
+        Gauge.builder("mqtt.publish.pending", this, r -> r.getPending())
+                .description("publishes waiting for window").register(registry);
+        FunctionCounter.builder("mqtt.publish.delivered", this, r -> r.getPublished())
+                .description("publishes completed").register(registry);
+        FunctionCounter.builder("mqtt.publish.failures", this, r -> r.getFailed())
+                .description("publishes failed").register(registry);
+        FunctionCounter.builder("mqtt.dropped", this, r -> r.getDropped())
+                .tag("stage", "queue").description("dropped messages").register(registry);
+        FunctionCounter.builder("mqtt.dropped", this, r -> r.getPublishDropped())
+                .tag("stage", "publish").description("dropped messages").register(registry);
+
         if (ENABLE && !BROKER.isEmpty() && !TOPIC.isEmpty()) {
             try {
                 if (IDENTITY.isEmpty()) {
                     // generate with random
                     IDENTITY = "mqtt-router-" + RandomStringUtils.randomAlphanumeric(5);
+                } else if (!SHARE_GROUP.isEmpty()) {
+                    // replicas share configuration, client ids must be unique
+                    IDENTITY = IDENTITY + "-" + RandomStringUtils.randomAlphanumeric(5);
                 }
 
                 // create client
                 _log.debug("create client for " + BROKER);
                 getReceiveClient();
-                getSendClient();
+                getSendClients();
 
                 _log.debug("connect client");
                 connect();
 
                 // subscribe handler
-                _log.debug("subscribe to " + TOPIC);
+                _log.debug("subscribe to " + filter());
                 subscribe();
             } catch (MqttException e) {
                 e.printStackTrace();
@@ -116,10 +182,38 @@ public class MqttNotificationsRouter {
     @PreDestroy
     public void cleanup() throws Exception {
         _log.debug("cleanup mqtt router");
+        // stop receiving first, then drain and flush before closing send
         if (_client != null) {
             if (_client.isConnected()) {
-                _log.debug("disconnect client from broker");
-                disconnect();
+                _log.debug("disconnect receive client from broker");
+                _client.disconnect();
+            }
+        }
+
+        if (queue != null) {
+            // drain pending messages
+            queue.shutdown();
+        }
+
+        if (handler != null) {
+            // flush pending batches
+            handler.shutdown();
+        }
+
+        if (publishers != null) {
+            // wait for queued publishes to be delivered, bounded
+            int left = publishers.awaitDrained(10000);
+            if (left > 0) {
+                _log.warn("publishers not drained, " + String.valueOf(left) + " messages dropped");
+            }
+        }
+
+        if (_aclients != null) {
+            for (IMqttAsyncClient c : _aclients) {
+                if (c.isConnected()) {
+                    _log.debug("disconnect send client " + c.getClientId() + " from broker");
+                    c.disconnect();
+                }
             }
         }
     }
@@ -127,16 +221,86 @@ public class MqttNotificationsRouter {
     private MqttMessageHandler handler() throws MqttException {
         if (handler == null) {
             _log.debug("build handler");
-            handler = new MqttMessageHandler(getSendClient(), service, TOPIC, QOS);
+            int batchSize = BATCH_ENABLE ? BATCH_SIZE : 0;
+            handler = new MqttMessageHandler(publishers(), service, TOPIC, batchSize, BATCH_WINDOW,
+                    new MqttMetrics(registry));
         }
 
         return handler;
     }
 
+    private MqttPublisherPool publishers() throws MqttException {
+        if (publishers == null) {
+            _log.debug("build publishers");
+            // one publisher per connection, each with its own window
+            List<MqttPublisher> list = new ArrayList<>();
+            for (IMqttAsyncClient c : getSendClients()) {
+                list.add(new MqttPublisher(c, QOS, PUBLISH_INFLIGHT, PUBLISH_CAPACITY));
+            }
+
+            publishers = new MqttPublisherPool(list);
+        }
+
+        return publishers;
+    }
+
+    private IMqttMessageListener listener() throws MqttException {
+        if (WORKERS <= 0) {
+            // process inline on paho callback thread
+            return handler();
+        }
+
+        if (queue == null) {
+            _log.debug("build ingestion queue");
+            queue = new MqttIngestionQueue(handler(), WORKERS, QUEUE_CAPACITY,
+                    MqttIngestionQueue.Policy.parse(QUEUE_POLICY));
+        }
+
+        return queue;
+    }
+
     private void subscribe() throws MqttException {
         // subscribe to base topic and pass service+client
-        // TODO implement cache for lookups, async processing via bus
-        getReceiveClient().subscribe(TOPIC, QOS, handler());
+        // process asynchronously via bounded queue
+        // on reconnect session is clean, filter keeps share group
+        getReceiveClient().subscribe(filter(), QOS, listener());
+    }
+
+    private String filter() {
+        if (SHARE_GROUP.isEmpty()) {
+            return TOPIC;
+        }
+
+        // shared subscription, broker delivers each message to a single member
+        return "$share/" + SHARE_GROUP + "/" + TOPIC;
+    }
+
+    public int getQueueDepth() {
+        return queue != null ? queue.getQueueDepth() : 0;
+    }
+
+    public long getDropped() {
+        return queue != null ? queue.getDropped() : 0;
+    }
+
+    public int getInflight() {
+        return publishers != null ? publishers.getInflight() : 0;
+    }
+
+    public int getPending() {
+        return publishers != null ? publishers.getPending() : 0;
+    }
+
+    public long getPublished() {
+        return publishers != null ? publishers.getPublished() : 0;
+    }
+
+    public long getFailed() {
+        return publishers != null ? publishers.getFailed() : 0;
+    }
+
+    public long getPublishDropped() {
+        return publishers != null ? publishers.getDropped() : 0;
     }
 
     private void connect() throws MqttSecurityException, MqttException {
@@ -149,13 +313,17 @@ public class MqttNotificationsRouter {
         _client.connect(options);
 
         // no callback for send client, nothing to subscribe
-        _aclient.connect(options);
-
-    }
+        // align paho window with publisher flow control
+        MqttConnectOptions sendOptions = new MqttConnectOptions();
+        sendOptions.setAutomaticReconnect(true);
+        sendOptions.setCleanSession(true);
+        sendOptions.setConnectionTimeout(10);
+        sendOptions.setMaxInflight(PUBLISH_INFLIGHT);
+
+        for (IMqttAsyncClient c : _aclients) {
+            c.connect(sendOptions);
+        }
 
-    private void disconnect() throws MqttException {
-        _client.disconnect();
-        _aclient.disconnect();
     }
 
     private IMqttClient getReceiveClient() throws MqttException {
@@ -168,15 +336,39 @@ public class MqttNotificationsRouter {
         return _client;
     }
 
-    private IMqttAsyncClient getSendClient() throws MqttException {
-        if (_aclient == null) {
-            String clientId = IDENTITY + "-send";
+    private List<IMqttAsyncClient> getSendClients() throws MqttException {
+        if (_aclients == null) {
+            int count = Math.max(1, PUBLISH_CLIENTS);
+            List<IMqttAsyncClient> list = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                // keep single client id unchanged
+                String clientId = IDENTITY + "-send";
+                if (count > 1) {
+                    clientId = clientId + "-" + String.valueOf(i);
+                }
+
+                list.add(createSendClient(clientId));
+            }
 
-            // disable persistance of messages to file, keep only memory
-            _log.debug("create send client for " + BROKER + " as " + clientId);
-            _aclient = new MqttAsyncClient(BROKER, clientId, null);
+            _aclients = list;
         }
-        return _aclient;
+        return _aclients;
+
+    }
+
+    private IMqttAsyncClient createSendClient(String clientId) throws MqttException {
+        // disable persistance of messages to file, keep only memory
+        _log.debug("create send client for " + BROKER + " as " + clientId);
+        MqttAsyncClient client = new MqttAsyncClient(BROKER, clientId, null);
+
+        // buffer publishes in memory while reconnecting
+        DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+        bufferOptions.setBufferEnabled(true);
+        bufferOptions.setBufferSize(PUBLISH_CAPACITY);
+        bufferOptions.setPersistBuffer(false);
+        bufferOptions.setDeleteOldestMessages(false);
+        client.setBufferOpts(bufferOptions);
 
+        return client;
     }
 }
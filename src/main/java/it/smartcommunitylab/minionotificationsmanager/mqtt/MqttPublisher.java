@@ -0,0 +1,181 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Publisher with windowed flow control over an async client
+ * messages exceeding the in-flight window wait in a bounded queue
+ * and are sent as delivery tokens complete, without blocking callers
+ * a single thread drains at a time so messages leave in queue order
+ */
+public class MqttPublisher {
+    private final static Logger _log = LoggerFactory.getLogger(MqttPublisher.class);
+
+    private final IMqttAsyncClient client;
+    private final int qos;
+    private final int inflight;
+    private final int capacity;
+
+    private final Semaphore window;
+    private final Queue<Message> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // single drainer, keeps publish order equal to queue order
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final IMqttActionListener listener = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken token) {
+            published.incrementAndGet();
+            window.release();
+            drain();
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable ex) {
+            failed.incrementAndGet();
+            _log.error("error delivering message to " + String.valueOf(token.getUserContext()) + ": "
+                    + (ex != null ? ex.getMessage() : ""));
+            window.release();
+            drain();
+        }
+    };
+
+    public MqttPublisher(IMqttAsyncClient client, int qos, int inflight, int capacity) {
+        _log.debug("create publisher for " + client.getClientId() + " with window " + String.valueOf(inflight));
+        this.client = client;
+        this.qos = qos;
+        this.inflight = inflight;
+        this.capacity = capacity;
+        this.window = new Semaphore(inflight);
+    }
+
+    public void publish(String dest, byte[] data) {
+        // bounded wait queue, drop when full
+        if (pendingCount.incrementAndGet() > capacity) {
+            pendingCount.decrementAndGet();
+            dropped.incrementAndGet();
+            _log.warn("publish queue full, drop message to " + dest);
+            return;
+        }
+
+        pending.offer(new Message(dest, data));
+        drain();
+    }
+
+    public int getInflight() {
+        return inflight - window.availablePermits();
+    }
+
+    public int getPending() {
+        return pendingCount.get();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int awaitDrained(long timeoutMillis) {
+        // wait for queue and window to empty, messages are sent as tokens complete
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (pendingCount.get() > 0 || window.availablePermits() < inflight) {
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // what is left is lost on disconnect
+        int left = pendingCount.get() + getInflight();
+        if (left > 0) {
+            dropped.addAndGet(pendingCount.get());
+            _log.warn("publisher for " + client.getClientId() + " not drained, drop " + String.valueOf(left)
+                    + " messages");
+        }
+
+        return left;
+    }
+
+    private void drain() {
+        while (draining.compareAndSet(false, true)) {
+            try {
+                send();
+            } finally {
+                draining.set(false);
+            }
+
+            // re-check, messages or permits may have arrived
+            // while another thread was excluded from draining
+            if (pending.isEmpty() || window.availablePermits() == 0) {
+                return;
+            }
+        }
+    }
+
+    private void send() {
+        // send as long as there is room in window
+        while (!pending.isEmpty() && window.tryAcquire()) {
+            Message m = pending.poll();
+            if (m == null) {
+                window.release();
+                break;
+            }
+            pendingCount.decrementAndGet();
+
+            try {
+                // send with no retain (ie no last will message)
+                // otherwise clients will receive the last event on new connection
+                MqttMessage message = new MqttMessage(m.data);
+                message.setQos(qos);
+                message.setRetained(false);
+
+                client.publish(m.dest, message, m.dest, listener);
+            } catch (MqttException pex) {
+                window.release();
+                failed.incrementAndGet();
+                _log.error("error routing message to " + m.dest + ": " + pex.getMessage());
+            }
+        }
+    }
+
+    private static final class Message {
+        private final String dest;
+        private final byte[] data;
+
+        private Message(String dest, byte[] data) {
+            this.dest = dest;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Pool of publishers, each on its own connection
+ * destinations are assigned via consistent hashing to keep per-topic ordering
+ */
+public class MqttPublisherPool {
+    private final static Logger _log = LoggerFactory.getLogger(MqttPublisherPool.class);
+
+    // virtual nodes per publisher, to even out distribution
+    private static final int REPLICAS = 64;
+
+    private final List<MqttPublisher> publishers;
+    private final int[] points;
+    private final MqttPublisher[] owners;
+
+    public MqttPublisherPool(List<MqttPublisher> list) {
+        _log.debug("create publisher pool with " + String.valueOf(list.size()) + " publishers");
+        publishers = Collections.unmodifiableList(new ArrayList<>(list));
+
+        // build ring, sorted by point
+        TreeMap<Integer, MqttPublisher> ring = new TreeMap<>();
+        for (int i = 0; i < publishers.size(); i++) {
+            for (int r = 0; r < REPLICAS; r++) {
+                ring.put(hash(String.valueOf(i) + "#" + String.valueOf(r)), publishers.get(i));
+            }
+        }
+
+        points = new int[ring.size()];
+        owners = new MqttPublisher[ring.size()];
+        int j = 0;
+        for (Map.Entry<Integer, MqttPublisher> e : ring.entrySet()) {
+            points[j] = e.getKey();
+            owners[j] = e.getValue();
+            j++;
+        }
+    }
+
+    public void publish(String dest, byte[] data) {
+        select(dest).publish(dest, data);
+    }
+
+    public MqttPublisher select(String dest) {
+        if (publishers.size() == 1) {
+            return publishers.get(0);
+        }
+
+        // first point clockwise from destination
+        int h = mix(dest.hashCode());
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points[mid] < h) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    public List<MqttPublisher> getPublishers() {
+        return publishers;
+    }
+
+    public int getInflight() {
+        int c = 0;
+        for (MqttPublisher p : publishers) {
+            c += p.getInflight();
+        }
+        return c;
+    }
+
+    public int getPending() {
+        int c = 0;
+        for (MqttPublisher p : publishers) {
+            c += p.getPending();
+        }
+        return c;
+    }
+
+    public long getPublished() {
+        long c = 0;
+        for (MqttPublisher p : publishers) {
+            c += p.getPublished();
+        }
+        return c;
+    }
+
+    public long getFailed() {
+        long c = 0;
+        for (MqttPublisher p : publishers) {
+            c += p.getFailed();
+        }
+        return c;
+    }
+
+    public long getDropped() {
+        long c = 0;
+        for (MqttPublisher p : publishers) {
+            c += p.getDropped();
+        }
+        return c;
+    }
+
+    public int awaitDrained(long timeoutMillis) {
+        // shared deadline for all publishers
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int left = 0;
+        for (MqttPublisher p : publishers) {
+            left += p.awaitDrained(Math.max(0L, deadline - System.currentTimeMillis()));
+        }
+        return left;
+    }
+
+    private static int hash(String s) {
+        // fnv-1a over utf-8 bytes, stable across restarts
+        int h = 0x811c9dc5;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        // murmur3 finalizer, spreads string hash codes over the ring
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
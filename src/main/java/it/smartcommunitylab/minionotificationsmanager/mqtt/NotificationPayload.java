@@ -0,0 +1,445 @@
+package it.smartcommunitylab.minionotificationsmanager.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Minio notification parsed in a single pass straight from the payload bytes
+ * only routing fields are decoded, records are kept as raw byte ranges for re-emission
+ */
+public final class NotificationPayload {
+
+    private static final byte[] EVENT_NAME = ascii("EventName");
+    private static final byte[] KEY = ascii("Key");
+    private static final byte[] RECORDS = ascii("Records");
+    private static final byte[] RECORD_EVENT_NAME = ascii("eventName");
+    private static final byte[] RECORD_S3 = ascii("s3");
+    private static final byte[] RECORD_BUCKET = ascii("bucket");
+    private static final byte[] RECORD_OBJECT = ascii("object");
+    private static final byte[] RECORD_NAME = ascii("name");
+    private static final byte[] RECORD_KEY = ascii("key");
+
+    private final byte[] data;
+
+    // raw json values, including quotes
+    private int eventNameFrom = -1;
+    private int eventNameTo = -1;
+    private int keyFrom = -1;
+    private int keyTo = -1;
+
+    // records as [from, to) pairs plus decoded routing fields
+    private int size = 0;
+    private int[] ranges = new int[2];
+    private String[] actions = new String[1];
+    private String[] buckets = new String[1];
+    private String[] keys = new String[1];
+
+    private NotificationPayload(byte[] data) {
+        this.data = data;
+    }
+
+    public static NotificationPayload parse(byte[] data) {
+        NotificationPayload payload = new NotificationPayload(data);
+        try {
+            new Parser(data, payload).parse();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated payload");
+        }
+
+        return payload;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean hasEventName() {
+        return eventNameFrom >= 0;
+    }
+
+    public int getEventNameFrom() {
+        return eventNameFrom;
+    }
+
+    public int getEventNameTo() {
+        return eventNameTo;
+    }
+
+    public boolean hasKey() {
+        return keyFrom >= 0;
+    }
+
+    public int getKeyFrom() {
+        return keyFrom;
+    }
+
+    public int getKeyTo() {
+        return keyTo;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRecordFrom(int i) {
+        return ranges[i * 2];
+    }
+
+    public int getRecordTo(int i) {
+        return ranges[i * 2 + 1];
+    }
+
+    public String getAction(int i) {
+        return actions[i];
+    }
+
+    public String getBucket(int i) {
+        return buckets[i];
+    }
+
+    public String getObjectKey(int i) {
+        return keys[i];
+    }
+
+    @Override
+    public String toString() {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private void addRecord(int from, int to, String action, String bucket, String key) {
+        if (size == actions.length) {
+            int len = size * 2;
+            ranges = Arrays.copyOf(ranges, len * 2);
+            actions = Arrays.copyOf(actions, len);
+            buckets = Arrays.copyOf(buckets, len);
+            keys = Arrays.copyOf(keys, len);
+        }
+
+        ranges[size * 2] = from;
+        ranges[size * 2 + 1] = to;
+        actions[size] = action;
+        buckets[size] = bucket;
+        keys[size] = key;
+        size++;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Parser
+     */
+
+    private static final class Parser {
+        private final byte[] b;
+        private final NotificationPayload out;
+        private int p = 0;
+
+        // fields of the record being parsed
+        private String action;
+        private String bucket;
+        private String key;
+
+        private Parser(byte[] b, NotificationPayload out) {
+            this.b = b;
+            this.out = out;
+        }
+
+        private void parse() {
+            ws();
+            expect('{');
+            if (empty('}')) {
+                return;
+            }
+
+            do {
+                int from = p;
+                skipString();
+                int to = p;
+                ws();
+                expect(':');
+                ws();
+
+                if (isName(from, to, EVENT_NAME) && b[p] == '"') {
+                    out.eventNameFrom = p;
+                    skipString();
+                    out.eventNameTo = p;
+                } else if (isName(from, to, KEY) && b[p] == '"') {
+                    out.keyFrom = p;
+                    skipString();
+                    out.keyTo = p;
+                } else if (isName(from, to, RECORDS) && b[p] == '[') {
+                    records();
+                } else {
+                    skipValue();
+                }
+            } while (next('}'));
+        }
+
+        private void records() {
+            expect('[');
+            if (empty(']')) {
+                return;
+            }
+
+            do {
+                ws();
+                int from = p;
+                action = null;
+                bucket = null;
+                key = null;
+                record();
+                out.addRecord(from, p, action, bucket, key);
+            } while (next(']'));
+        }
+
+        private void record() {
+            expect('{');
+            if (empty('}')) {
+                return;
+            }
+
+            do {
+                int from = p;
+                skipString();
+                int to = p;
+                ws();
+                expect(':');
+                ws();
+
+                if (isName(from, to, RECORD_EVENT_NAME) && b[p] == '"') {
+                    action = readString();
+                } else if (isName(from, to, RECORD_S3) && b[p] == '{') {
+                    s3();
+                } else {
+                    skipValue();
+                }
+            } while (next('}'));
+        }
+
+        private void s3() {
+            expect('{');
+            if (empty('}')) {
+                return;
+            }
+
+            do {
+                int from = p;
+                skipString();
+                int to = p;
+                ws();
+                expect(':');
+                ws();
+
+                if (isName(from, to, RECORD_BUCKET) && b[p] == '{') {
+                    bucket = field(RECORD_NAME);
+                } else if (isName(from, to, RECORD_OBJECT) && b[p] == '{') {
+                    key = field(RECORD_KEY);
+                } else {
+                    skipValue();
+                }
+            } while (next('}'));
+        }
+
+        // read a single string field from object, skipping the rest
+        private String field(byte[] name) {
+            String value = null;
+            expect('{');
+            if (empty('}')) {
+                return value;
+            }
+
+            do {
+                int from = p;
+                skipString();
+                int to = p;
+                ws();
+                expect(':');
+                ws();
+
+                if (isName(from, to, name) && b[p] == '"') {
+                    value = readString();
+                } else {
+                    skipValue();
+                }
+            } while (next('}'));
+
+            return value;
+        }
+
+        /*
+         * Tokens
+         */
+
+        private void ws() {
+            while (p < b.length && (b[p] == ' ' || b[p] == '\n' || b[p] == '\r' || b[p] == '\t')) {
+                p++;
+            }
+        }
+
+        private void expect(char c) {
+            if (b[p] != c) {
+                throw error("expected '" + c + "'");
+            }
+            p++;
+        }
+
+        private boolean empty(char close) {
+            ws();
+            if (b[p] == close) {
+                p++;
+                return true;
+            }
+            return false;
+        }
+
+        // consume separator, returns false on closing char
+        private boolean next(char close) {
+            ws();
+            byte c = b[p++];
+            if (c == ',') {
+                ws();
+                return true;
+            }
+            if (c == close) {
+                return false;
+            }
+            throw error("expected ',' or '" + close + "'");
+        }
+
+        // compare quoted name at [from, to) with ascii constant
+        private boolean isName(int from, int to, byte[] name) {
+            int len = to - from - 2;
+            if (len != name.length) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (b[from + 1 + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipString() {
+            expect('"');
+            while (true) {
+                byte c = b[p++];
+                if (c == '\\') {
+                    p++;
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            int from = p;
+            boolean escaped = false;
+            while (true) {
+                byte c = b[p];
+                if (c == '\\') {
+                    escaped = true;
+                    p += 2;
+                } else if (c == '"') {
+                    break;
+                } else {
+                    p++;
+                }
+            }
+            int to = p;
+            p++;
+
+            if (!escaped) {
+                // fast path, no intermediate copies
+                return new String(b, from, to - from, StandardCharsets.UTF_8);
+            }
+
+            return unescape(from, to);
+        }
+
+        private String unescape(int from, int to) {
+            StringBuilder sb = new StringBuilder(to - from);
+            int run = from;
+            int i = from;
+            while (i < to) {
+                if (b[i] != '\\') {
+                    i++;
+                    continue;
+                }
+
+                // flush raw utf-8 run
+                sb.append(new String(b, run, i - run, StandardCharsets.UTF_8));
+                byte e = b[i + 1];
+                switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(new String(b, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default:
+                    // quote, backslash and slash
+                    sb.append((char) e);
+                    break;
+                }
+                i += 2;
+                run = i;
+            }
+            sb.append(new String(b, run, to - run, StandardCharsets.UTF_8));
+
+            return sb.toString();
+        }
+
+        private void skipValue() {
+            byte c = b[p];
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                // skip nested structures, honoring strings
+                int depth = 0;
+                do {
+                    c = b[p];
+                    if (c == '"') {
+                        skipString();
+                        continue;
+                    }
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    p++;
+                } while (depth > 0);
+            } else {
+                // numbers and literals
+                while (p < b.length && c != ',' && c != '}' && c != ']' && c != ' ' && c != '\n' && c != '\r'
+                        && c != '\t') {
+                    p++;
+                    if (p < b.length) {
+                        c = b[p];
+                    }
+                }
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("invalid payload at " + String.valueOf(p) + ": " + message);
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package it.smartcommunitylab.minionotificationsmanager.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import it.smartcommunitylab.minionotificationsmanager.model.Event;
 
@@ -12,4 +26,40 @@ public interface EventRepository extends JpaRepository<Event, Long> {
 
     List<Event> findByBucket(String bucket);
 
+    List<Event> findByBucket(String bucket, Sort sort);
+
+    Page<Event> findByBucket(String bucket, Pageable pageable);
+
+    // cursor over results, consume within a transaction
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Event> streamByBucket(String bucket);
+
+    Long countByBucketAndTopic(String bucket, String topic);
+
+    List<Event> findByTopic(String topic);
+
+    List<Event> findByTopicIsNull();
+
+    // count per topic, as rows of [topic, count]
+    @Query("select e.topic, count(e) from Event e where e.bucket = :bucket and e.topic in :topics group by e.topic")
+    List<Object[]> countByBucketAndTopicIn(@Param("bucket") String bucket, @Param("topics") Collection<String> topics);
+
+    // aggregates per bucket, as rows of [bucket, count, sum of ids, last modified]
+    @Query("select e.bucket, count(e), sum(e.id), max(e.modifiedDate) from Event e group by e.bucket")
+    List<Object[]> fingerprintByBucket();
+
+    @Query("select e.bucket, count(e), sum(e.id), max(e.modifiedDate) from Event e where e.bucket = :bucket group by e.bucket")
+    List<Object[]> fingerprintOfBucket(@Param("bucket") String bucket);
+
+    // bulk delete, single statement without loading entities
+    @Modifying
+    @Transactional
+    @Query("delete from Event e where e.bucket = :bucket and e.topic in :topics")
+    int deleteByBucketAndTopicIn(@Param("bucket") String bucket, @Param("topics") Collection<String> topics);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Event e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
 }
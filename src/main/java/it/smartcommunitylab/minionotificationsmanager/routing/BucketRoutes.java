@@ -0,0 +1,60 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+
+public final class BucketRoutes {
+
+    public static final BucketRoutes EMPTY = new BucketRoutes("", Collections.emptyList());
+
+    private final String bucket;
+    private final List<Route> routes;
+    private final RouteMatcher matcher;
+
+    private BucketRoutes(String bucket, List<Route> routes) {
+        this.bucket = bucket;
+        this.routes = routes;
+        this.matcher = new RouteMatcher(routes);
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    public List<Route> match(String action, String key) {
+        // search ALL matches via compiled matcher, routes are unique per topic
+        return matcher.match(action, key);
+    }
+
+    public static BucketRoutes build(String bucket, List<Event> events) {
+        // compile events as routes, merging duplicate registrations
+        // by design events mapping to the same topic describe the same event
+        Map<String, Route> map = new LinkedHashMap<>();
+        for (Event event : events) {
+            Route route = new Route(EventDTO.fromEvent(event));
+            map.putIfAbsent(route.getTopic(), route);
+        }
+
+        return new BucketRoutes(bucket, Collections.unmodifiableList(new ArrayList<>(map.values())));
+    }
+
+    @Override
+    public String toString() {
+        return "BucketRoutes [bucket=" + bucket + ", routes=" + routes + "]";
+    }
+
+}
@@ -0,0 +1,95 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import java.util.Arrays;
+
+/*
+ * Character trie over route prefixes (or reversed suffixes)
+ * every node keeps the set of routes whose pattern ends there, as bitset words
+ */
+final class KeyTrie {
+
+    private final int words;
+    private final boolean reversed;
+    private final Node root = new Node();
+
+    KeyTrie(int size, boolean reversed) {
+        this.words = (size + 63) >>> 6;
+        this.reversed = reversed;
+    }
+
+    void insert(String pattern, int index) {
+        Node node = root;
+        int len = pattern.length();
+        for (int i = 0; i < len; i++) {
+            char c = reversed ? pattern.charAt(len - 1 - i) : pattern.charAt(i);
+            node = node.add(c);
+        }
+
+        if (node.routes == null) {
+            node.routes = new long[words];
+        }
+        node.routes[index >>> 6] |= 1L << index;
+    }
+
+    // collect all routes whose pattern is a prefix (or suffix) of key
+    // empty patterns live on root and thus match every key
+    long[] match(String key) {
+        long[] result = new long[words];
+        Node node = root;
+        int len = key.length();
+        int i = 0;
+        while (node != null) {
+            if (node.routes != null) {
+                for (int w = 0; w < words; w++) {
+                    result[w] |= node.routes[w];
+                }
+            }
+
+            if (i == len) {
+                break;
+            }
+
+            char c = reversed ? key.charAt(len - 1 - i) : key.charAt(i);
+            node = node.child(c);
+            i++;
+        }
+
+        return result;
+    }
+
+    private static final class Node {
+        // sorted labels with children at the same index
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private long[] routes;
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node add(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) {
+                return children[i];
+            }
+
+            // insert keeping order
+            int p = -(i + 1);
+            char[] l = new char[labels.length + 1];
+            Node[] n = new Node[children.length + 1];
+            System.arraycopy(labels, 0, l, 0, p);
+            System.arraycopy(children, 0, n, 0, p);
+            System.arraycopy(labels, p, l, p + 1, labels.length - p);
+            System.arraycopy(children, p, n, p + 1, children.length - p);
+
+            Node node = new Node();
+            l[p] = c;
+            n[p] = node;
+            labels = l;
+            children = n;
+
+            return node;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+
+public final class Route {
+
+    // private copy, never exposed to avoid mutations after compilation
+    private final EventDTO event;
+    private final String topic;
+
+    // memoized full destination, routes are rebuilt on changes
+    private volatile String destination;
+
+    public Route(EventDTO e) {
+        event = new EventDTO();
+        event.setBucket(e.getBucket());
+        event.setActions(e.getActions().clone());
+        event.setPrefix(e.getPrefix());
+        event.setSuffix(e.getSuffix());
+        event.buildTopic();
+
+        topic = event.getTopic();
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getDestination(String base) {
+        String d = destination;
+        if (d == null) {
+            d = base + "/" + topic;
+            destination = d;
+        }
+
+        return d;
+    }
+
+    public String getPrefix() {
+        return event.getPrefix();
+    }
+
+    public String getSuffix() {
+        return event.getSuffix();
+    }
+
+    public long getActionMask() {
+        return event.getActionMask();
+    }
+
+    public boolean matchesAction(String action) {
+        return event.matchesAction(action);
+    }
+
+    public boolean matches(String action, String key) {
+        return event.matchesAction(action) && event.matchesPrefix(key) && event.matchesSuffix(key);
+    }
+
+    @Override
+    public String toString() {
+        return "Route [topic=" + topic + "]";
+    }
+
+}
@@ -0,0 +1,109 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.smartcommunitylab.minionotificationsmanager.model.ActionMask;
+
+/*
+ * Compiled matcher resolving keys to routes in O(key length)
+ * by intersecting a prefix trie, a reversed suffix trie and an action filter
+ */
+public final class RouteMatcher {
+
+    private final List<Route> routes;
+    private final int words;
+    private final KeyTrie prefixes;
+    private final KeyTrie suffixes;
+
+    // routes per action bit, wildcards already expanded in masks
+    private final long[][] actions;
+    private final long[] none;
+
+    public RouteMatcher(List<Route> routes) {
+        this.routes = routes;
+        this.words = (routes.size() + 63) >>> 6;
+        this.prefixes = new KeyTrie(routes.size(), false);
+        this.suffixes = new KeyTrie(routes.size(), true);
+        this.actions = new long[ActionMask.bits()][];
+        this.none = new long[words];
+
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            prefixes.insert(route.getPrefix(), i);
+            suffixes.insert(route.getSuffix(), i);
+
+            long mask = route.getActionMask();
+            while (mask != 0) {
+                int b = Long.numberOfTrailingZeros(mask);
+                if (actions[b] == null) {
+                    actions[b] = new long[words];
+                }
+                actions[b][i >>> 6] |= 1L << i;
+                mask &= mask - 1;
+            }
+        }
+    }
+
+    public List<Route> match(String action, String key) {
+        if (routes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long[] a = actions(ActionMask.forEvent(action));
+        if (a == none) {
+            return Collections.emptyList();
+        }
+
+        long[] p = prefixes.match(key);
+        long[] s = suffixes.match(key);
+
+        List<Route> matches = null;
+        for (int w = 0; w < words; w++) {
+            long bits = a[w] & p[w] & s[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (matches == null) {
+                    matches = new ArrayList<>();
+                }
+                matches.add(routes.get(i));
+                bits &= bits - 1;
+            }
+        }
+
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+
+        return matches;
+    }
+
+    private long[] actions(long mask) {
+        if (mask == 0) {
+            return none;
+        }
+
+        // known event types map to a single bit
+        int b = Long.numberOfTrailingZeros(mask);
+        if ((mask & (mask - 1)) == 0) {
+            return actions[b] != null ? actions[b] : none;
+        }
+
+        long[] set = new long[words];
+        boolean empty = true;
+        while (mask != 0) {
+            b = Long.numberOfTrailingZeros(mask);
+            if (actions[b] != null) {
+                for (int w = 0; w < words; w++) {
+                    set[w] |= actions[b][w];
+                }
+                empty = false;
+            }
+            mask &= mask - 1;
+        }
+
+        return empty ? none : set;
+    }
+
+}
@@ -0,0 +1,34 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/*
+ * Periodic refresh of the routing table from db
+ * picks up events changed by other instances sharing the db
+ */
+@Component
+@ConditionalOnProperty(name = "routing.refresh.enable", havingValue = "true")
+public class RoutingRefresher {
+    private final static Logger _log = LoggerFactory.getLogger(RoutingRefresher.class);
+
+    @Autowired
+    private RoutingTable routes;
+
+    @Scheduled(initialDelayString = "${routing.refresh.interval}", fixedDelayString = "${routing.refresh.interval}")
+    public void refresh() {
+        try {
+            int count = routes.refresh();
+            if (count > 0) {
+                _log.debug("refreshed routes for " + String.valueOf(count) + " buckets");
+            }
+        } catch (RuntimeException ex) {
+            // keep current routes, retry on next run
+            _log.error("error refreshing routes: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.repository.EventRepository;
+
+@Component
+public class RoutingTable {
+    private final static Logger _log = LoggerFactory.getLogger(RoutingTable.class);
+
+    @Autowired
+    private EventRepository repository;
+
+    // immutable snapshots per bucket, replaced as a whole on changes
+    // readers never lock and never see a partially built table
+    private final Map<String, BucketRoutes> routes = new ConcurrentHashMap<>();
+
+    // change counters per bucket, valid for this instance only
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    // db fingerprints per bucket as of the last load
+    // changes written by other instances sharing the db show up as differences
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        _log.debug("init routing table");
+        rebuild();
+    }
+
+    public BucketRoutes get(String bucket) {
+        BucketRoutes r = routes.get(bucket);
+        if (r == null) {
+            return BucketRoutes.EMPTY;
+        }
+
+        return r;
+    }
+
+    /*
+     * Versions, bumped on every rebuild
+     */
+
+    public String getVersion(String bucket) {
+        // built from a per-instance epoch, never equal across replicas or restarts
+        // unchanged since startup reads as 0
+        Long v = versions.get(bucket);
+        return epoch + "-" + String.valueOf(v != null ? v : 0L);
+    }
+
+    private void touch(String bucket) {
+        // callers rebuild after their changes are committed
+        versions.put(bucket, sequence.incrementAndGet());
+    }
+
+    /*
+     * Rebuild, writers are serialized to keep snapshots ordered
+     */
+
+    public synchronized void rebuild() {
+        _log.debug("rebuild routing table");
+        // read fingerprints first, later changes are caught by refresh
+        Map<String, String> current = fingerprints(repository.fingerprintByBucket());
+        Map<String, List<Event>> events = repository.findAll().stream()
+                .collect(Collectors.groupingBy(e -> e.getBucket()));
+
+        // drop buckets without events
+        routes.keySet().retainAll(events.keySet());
+
+        for (Map.Entry<String, List<Event>> entry : events.entrySet()) {
+            routes.put(entry.getKey(), BucketRoutes.build(entry.getKey(), entry.getValue()));
+        }
+
+        // invalidate every known bucket
+        for (String bucket : versions.keySet()) {
+            touch(bucket);
+        }
+
+        fingerprints.clear();
+        fingerprints.putAll(current);
+    }
+
+    public synchronized void rebuild(String bucket) {
+        _log.debug("rebuild routing table for bucket " + bucket);
+        // record fingerprint of our own change, refresh will skip it
+        String fingerprint = fingerprints(repository.fingerprintOfBucket(bucket)).get(bucket);
+        load(bucket);
+        touch(bucket);
+
+        if (fingerprint != null) {
+            fingerprints.put(bucket, fingerprint);
+        } else {
+            fingerprints.remove(bucket);
+        }
+    }
+
+    /*
+     * Refresh, reloads buckets changed in db by other instances
+     */
+
+    public synchronized int refresh() {
+        Map<String, String> current = fingerprints(repository.fingerprintByBucket());
+
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(fingerprints.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String bucket : fingerprints.keySet()) {
+            if (!current.containsKey(bucket)) {
+                // all events removed
+                changed.add(bucket);
+            }
+        }
+
+        // rows changed even when routes did not, as for duplicate topics
+        // version tracks events as listed, bump on every change
+        for (String bucket : changed) {
+            _log.debug("reload routes for bucket " + bucket);
+            load(bucket);
+            touch(bucket);
+        }
+
+        fingerprints.clear();
+        fingerprints.putAll(current);
+        return changed.size();
+    }
+
+    private void load(String bucket) {
+        List<Event> events = repository.findByBucket(bucket);
+        if (events.isEmpty()) {
+            routes.remove(bucket);
+        } else {
+            routes.put(bucket, BucketRoutes.build(bucket, events));
+        }
+    }
+
+    private static Map<String, String> fingerprints(List<Object[]> rows) {
+        // any insert, delete or update changes count, id sum or last modified
+        Map<String, String> map = new HashMap<>();
+        for (Object[] row : rows) {
+            if (row[0] == null) {
+                continue;
+            }
+
+            Date modified = (Date) row[3];
+            map.put((String) row[0], String.valueOf(row[1]) + ":" + String.valueOf(row[2]) + ":"
+                    + String.valueOf(modified != null ? modified.getTime() : 0L));
+        }
+
+        return map;
+    }
+
+}
@@ -1,14 +1,36 @@
 package it.smartcommunitylab.minionotificationsmanager.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyReferenceException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import it.smartcommunitylab.minionotificationsmanager.common.InvalidArgumentException;
 import it.smartcommunitylab.minionotificationsmanager.common.NoSuchBucketException;
 import it.smartcommunitylab.minionotificationsmanager.common.NoSuchEventException;
 import it.smartcommunitylab.minionotificationsmanager.common.SystemException;
@@ -16,7 +38,11 @@ import it.smartcommunitylab.minionotificationsmanager.minio.MinioBridge;
 import it.smartcommunitylab.minionotificationsmanager.minio.MinioException;
 import it.smartcommunitylab.minionotificationsmanager.model.Event;
 import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.model.SyncPlan;
+import it.smartcommunitylab.minionotificationsmanager.model.SyncReport;
 import it.smartcommunitylab.minionotificationsmanager.repository.EventRepository;
+import it.smartcommunitylab.minionotificationsmanager.routing.BucketRoutes;
+import it.smartcommunitylab.minionotificationsmanager.routing.RoutingTable;
 
 @Component
 public class NotificationService {
@@ -28,6 +54,31 @@ public class NotificationService {
     @Autowired
     private EventRepository repository;
 
+    @Autowired
+    private RoutingTable routes;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // bound on parameters per bulk delete
+    private static final int DELETE_CHUNK = 500;
+
+    @Value("${startup.sync.parallelism}")
+    private int SYNC_PARALLELISM;
+
+    @PostConstruct
+    public void init() {
+        // backfill topics for events persisted before topics were stored
+        List<Event> events = repository.findByTopicIsNull();
+        if (!events.isEmpty()) {
+            _log.info("build topic for " + String.valueOf(events.size()) + " events");
+            for (Event e : events) {
+                e.buildTopic();
+            }
+            repository.saveAll(events);
+        }
+    }
+
     /*
      * CRUD
      */
@@ -76,7 +127,60 @@ public class NotificationService {
             // save to repository
             // listener will register to minio
 
-            return repository.saveAndFlush(event);
+            event = repository.saveAndFlush(event);
+
+            // update routes
+            routes.rebuild(bucket);
+
+            return event;
+        } catch (MinioException e) {
+            throw new SystemException(e.getMessage());
+        }
+    }
+
+    public List<Event> addEvents(String bucket, List<EventDTO> dtos) throws NoSuchBucketException, SystemException {
+        try {
+            // check if bucket exists in minio, once
+            boolean exists = minio.hasBucket(bucket);
+
+            if (!exists) {
+                _log.error("bucket " + bucket + " does not exists in minio");
+                throw new NoSuchBucketException();
+            }
+
+            _log.debug("add events " + String.valueOf(dtos.size()) + " for bucket " + bucket);
+            List<Event> events = new ArrayList<>();
+            for (EventDTO dto : dtos) {
+                Event event = dto.toEvent();
+                event.setBucket(bucket);
+                event.setImported(false);
+                // listener registration disabled, done below for all
+                event.setDeferred(true);
+                events.add(event);
+            }
+
+            // save to repository in a single transaction, committed on return
+            // minio and routes are updated only once rows are committed
+            events = repository.saveAll(events);
+
+            try {
+                // register to minio with a single write
+                minio.setEvents(bucket, events.stream().map(e -> EventDTO.fromEvent(e)).collect(Collectors.toList()),
+                        false);
+            } catch (MinioException e) {
+                // remove committed rows, nothing was registered
+                _log.error("error registering events, remove from repository: " + e.getMessage());
+                List<Long> ids = events.stream().map(ev -> ev.getId()).collect(Collectors.toList());
+                for (int i = 0; i < ids.size(); i += DELETE_CHUNK) {
+                    repository.deleteByIdIn(ids.subList(i, Math.min(i + DELETE_CHUNK, ids.size())));
+                }
+                throw e;
+            }
+
+            // update routes
+            routes.rebuild(bucket);
+
+            return events;
         } catch (MinioException e) {
             throw new SystemException(e.getMessage());
         }
@@ -94,6 +198,9 @@ public class NotificationService {
                 unregisterEvent(e);
                 repository.delete(e);
 
+                // update routes
+                routes.rebuild(bucket);
+
                 return e;
             } else {
                 throw new NoSuchEventException();
@@ -128,6 +235,55 @@ public class NotificationService {
         }
     }
 
+    public List<Event> listEvents(String bucket, Sort sort) throws InvalidArgumentException, SystemException {
+        _log.debug("list events for bucket " + bucket + " sort " + sort.toString());
+        try {
+            return repository.findByBucket(bucket, sort);
+        } catch (PropertyReferenceException e) {
+            throw new InvalidArgumentException(e.getMessage());
+        } catch (Exception e) {
+            throw new SystemException(e.getMessage());
+        }
+    }
+
+    public Page<Event> listEvents(String bucket, Pageable pageable) throws InvalidArgumentException, SystemException {
+        _log.debug("list events for bucket " + bucket + " page " + pageable.toString());
+        try {
+            // page and count are computed by the database
+            return repository.findByBucket(bucket, pageable);
+        } catch (PropertyReferenceException e) {
+            throw new InvalidArgumentException(e.getMessage());
+        } catch (Exception e) {
+            throw new SystemException(e.getMessage());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void streamEvents(String bucket, Consumer<Event> consumer) {
+        _log.debug("stream events for bucket " + bucket);
+        // cursor is bound to the transaction, detach rows once consumed
+        try (Stream<Event> events = repository.streamByBucket(bucket)) {
+            events.forEach(e -> {
+                consumer.accept(e);
+                entityManager.detach(e);
+            });
+        }
+    }
+
+    /*
+     * Routing
+     */
+
+    public String getVersion(String bucket) {
+        // changes on events of bucket, served from memory
+        return routes.getVersion(bucket);
+    }
+
+    public BucketRoutes getRoutes(String bucket) {
+        // served from memory, never hits the repository
+        return routes.get(bucket);
+    }
+
     /*
      * Actions
      */
@@ -150,14 +306,7 @@ public class NotificationService {
         _log.debug("unregister event " + event.toString());
         EventDTO dto = EventDTO.fromEvent(event);
         // search for duplicates and remove from minio only if none found
-        List<Event> events = repository.findByBucket(event.getBucket());
-        int c = 0;
-        for (Event e : events) {
-            // compare via DTOs
-            if (dto.equals(EventDTO.fromEvent(e))) {
-                c++;
-            }
-        }
+        long c = repository.countByBucketAndTopic(event.getBucket(), dto.getTopic());
 
         if (c <= 1) {
             try {
@@ -172,6 +321,65 @@ public class NotificationService {
         }
     }
 
+    public List<Event> deleteEvents(String bucket, Collection<Long> ids) throws SystemException {
+        _log.debug("delete events " + String.valueOf(ids.size()) + " for bucket " + bucket);
+
+        // only events in bucket, others are ignored
+        List<Event> events = repository.findAllById(ids).stream()
+                .filter(e -> bucket.equals(e.getBucket()))
+                .collect(Collectors.toList());
+
+        if (events.isEmpty()) {
+            return events;
+        }
+
+        // count deletions per topic
+        Map<String, EventDTO> dtos = new HashMap<>();
+        Map<String, Long> deleted = new HashMap<>();
+        for (Event e : events) {
+            EventDTO dto = EventDTO.fromEvent(e);
+            dtos.putIfAbsent(dto.getTopic(), dto);
+            deleted.merge(dto.getTopic(), 1L, Long::sum);
+        }
+
+        // unregister from minio topics left without events, via a single count
+        List<EventDTO> unregister = new ArrayList<>();
+        List<String> topics = new ArrayList<>(dtos.keySet());
+        for (int i = 0; i < topics.size(); i += DELETE_CHUNK) {
+            List<Object[]> counts = repository.countByBucketAndTopicIn(bucket,
+                    topics.subList(i, Math.min(i + DELETE_CHUNK, topics.size())));
+            for (Object[] row : counts) {
+                String topic = (String) row[0];
+                long c = ((Number) row[1]).longValue();
+                if (c <= deleted.get(topic)) {
+                    unregister.add(dtos.get(topic));
+                }
+            }
+        }
+
+        try {
+            // remove and *then* unregister, once deletes are committed
+            // on errors minio may keep configs without events, never the opposite
+            List<Long> list = events.stream().map(e -> e.getId()).collect(Collectors.toList());
+            for (int i = 0; i < list.size(); i += DELETE_CHUNK) {
+                repository.deleteByIdIn(list.subList(i, Math.min(i + DELETE_CHUNK, list.size())));
+            }
+
+            if (!unregister.isEmpty()) {
+                minio.unregisterEvents(bucket, unregister);
+            }
+        } catch (MinioException e) {
+            _log.error("error unregistering events: " + e.getMessage());
+            e.printStackTrace();
+            throw new SystemException(e.getMessage());
+        } finally {
+            // update routes
+            routes.rebuild(bucket);
+        }
+
+        return events;
+    }
+
     public List<Event> syncToMinio(String bucket, boolean clear) throws SystemException {
         _log.debug("sync events to minio for bucket " + bucket);
         List<Event> events = repository.findByBucket(bucket);
@@ -195,41 +403,44 @@ public class NotificationService {
     public List<Event> syncFromMinio(String bucket, boolean clear) throws SystemException {
         _log.debug("sync events from minio for bucket " + bucket);
 
-        if (clear) {
-            // delete local events for bucket
-            List<Event> events = repository.findByBucket(bucket);
-            for (Event e : events) {
-                repository.delete(e);
-            }
-        }
-
-        List<EventDTO> events = repository.findByBucket(bucket)
-                .stream().map(e -> EventDTO.fromEvent(e))
-                .collect(Collectors.toList());
-
         List<Event> results = new ArrayList<>();
 
         try {
-            // resolve duplicates
-            List<EventDTO> list = minio.getEvents(bucket);
-            for (EventDTO e : list) {
-                // will match on topic as per equals()
-                if (!events.contains(e)) {
-                    // add as new
-                    // will trigger register but flag will disable propagation
-                    _log.debug("add event " + e.toString());
-                    Event event = e.toEvent();
-                    event.setImported(true);
-                    event = repository.saveAndFlush(event);
-                    results.add(event);
+            // diff minio against local, on topics
+            SyncPlan plan = diffFromMinio(bucket, clear);
+            _log.debug("import " + plan.toString());
+
+            if (!plan.getRemovedTopics().isEmpty()) {
+                // delete local events not found in minio, in bulk
+                List<String> topics = new ArrayList<>(plan.getRemovedTopics());
+                int c = 0;
+                for (int i = 0; i < topics.size(); i += DELETE_CHUNK) {
+                    c += repository.deleteByBucketAndTopicIn(bucket,
+                            topics.subList(i, Math.min(i + DELETE_CHUNK, topics.size())));
                 }
+                _log.debug("deleted " + String.valueOf(c) + " events for bucket " + bucket);
             }
 
+            for (EventDTO e : plan.getAdd()) {
+                // add as new
+                // will trigger register but flag will disable propagation
+                _log.debug("add event " + e.toString());
+                Event event = e.toEvent();
+                event.setImported(true);
+                results.add(event);
+            }
+
+            // persist in a single transaction, inserts are batched
+            results = repository.saveAll(results);
+
         } catch (MinioException mex) {
             _log.error("error sync bucket: " + mex.getMessage());
             mex.printStackTrace();
             throw new SystemException(mex.getMessage());
 
+        } finally {
+            // update routes, local events may have changed even on errors
+            routes.rebuild(bucket);
         }
 
         // return only newly added events
@@ -238,37 +449,131 @@ public class NotificationService {
     }
 
     /*
-     * Sync
+     * Plans, dry run of sync
      */
-    public void syncFromMinio(boolean clear) throws SystemException {
-        _log.debug("sync all events from minio");
+    public SyncPlan planFromMinio(String bucket, boolean clear) throws SystemException {
+        try {
+            return diffFromMinio(bucket, clear);
+        } catch (MinioException mex) {
+            _log.error("error plan bucket: " + mex.getMessage());
+            throw new SystemException(mex.getMessage());
+        }
+    }
 
+    public SyncPlan planToMinio(String bucket, boolean clear) throws SystemException {
+        List<EventDTO> events = repository.findByBucket(bucket)
+                .stream().map(e -> EventDTO.fromEvent(e))
+                .collect(Collectors.toList());
         try {
-            // fetch all buckets from minio
-            List<String> buckets = minio.listBuckets();
-            for (String bucket : buckets) {
-                List<Event> events = syncFromMinio(bucket, clear);
-            }
+            return minio.planEvents(bucket, events, clear);
         } catch (MinioException mex) {
-            mex.printStackTrace();
-            _log.error("error sync from minio: " + mex.getMessage());
+            _log.error("error plan bucket: " + mex.getMessage());
             throw new SystemException(mex.getMessage());
         }
     }
 
-    public void syncToMinio(boolean clear) throws SystemException {
+    private SyncPlan diffFromMinio(String bucket, boolean clear) throws MinioException {
+        List<EventDTO> events = repository.findByBucket(bucket)
+                .stream().map(e -> EventDTO.fromEvent(e))
+                .collect(Collectors.toList());
+
+        return SyncPlan.of(bucket, minio.getEvents(bucket), events, clear);
+    }
+
+    /*
+     * Sync
+     */
+    public SyncReport syncFromMinio(boolean clear, boolean halt) throws SystemException {
+        _log.debug("sync all events from minio");
+        return syncAll(bucket -> syncFromMinio(bucket, clear), halt);
+    }
+
+    public SyncReport syncToMinio(boolean clear, boolean halt) throws SystemException {
         _log.debug("sync all events to minio");
+        return syncAll(bucket -> syncToMinio(bucket, clear), halt);
+    }
 
+    private SyncReport syncAll(BucketSync sync, boolean halt) throws SystemException {
+        long start = System.currentTimeMillis();
+        SyncReport report = new SyncReport();
+
+        List<String> buckets;
         try {
             // fetch all buckets from minio
-            List<String> buckets = minio.listBuckets();
-            for (String bucket : buckets) {
-                List<Event> events = syncToMinio(bucket, clear);
-            }
+            buckets = minio.listBuckets();
         } catch (MinioException mex) {
             mex.printStackTrace();
-            _log.error("error sync to minio: " + mex.getMessage());
+            _log.error("error listing buckets: " + mex.getMessage());
             throw new SystemException(mex.getMessage());
         }
+
+        if (!buckets.isEmpty()) {
+            // bounded parallelism, buckets are independent
+            int threads = Math.max(1, Math.min(SYNC_PARALLELISM, buckets.size()));
+            final AtomicInteger count = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "sync-" + String.valueOf(count.incrementAndGet()));
+                t.setDaemon(true);
+                return t;
+            });
+            CompletionService<BucketResult> completion = new ExecutorCompletionService<>(executor);
+
+            try {
+                for (String bucket : buckets) {
+                    completion.submit(() -> {
+                        try {
+                            return new BucketResult(bucket, sync.apply(bucket).size(), null);
+                        } catch (SystemException | RuntimeException ex) {
+                            return new BucketResult(bucket, 0, ex);
+                        }
+                    });
+                }
+
+                // collect in completion order, to halt on first error
+                for (int i = 0; i < buckets.size(); i++) {
+                    BucketResult r = completion.take().get();
+                    if (r.error == null) {
+                        _log.debug("sync bucket " + r.bucket + " events " + String.valueOf(r.count));
+                        report.addResult(r.bucket, r.count);
+                    } else {
+                        _log.error("error sync bucket " + r.bucket + ": " + r.error.getMessage());
+                        report.addError(r.bucket, r.error.getMessage());
+                        if (halt) {
+                            throw new SystemException("error sync bucket " + r.bucket + ": " + r.error.getMessage());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SystemException("sync interrupted");
+            } catch (ExecutionException e) {
+                // tasks catch their own errors
+                throw new SystemException(e.getMessage());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        report.setDuration(System.currentTimeMillis() - start);
+        _log.info("sync completed " + report.toString());
+
+        return report;
+    }
+
+    @FunctionalInterface
+    private interface BucketSync {
+        public List<Event> apply(String bucket) throws SystemException;
+    }
+
+    private static final class BucketResult {
+        private final String bucket;
+        private final int count;
+        private final Exception error;
+
+        private BucketResult(String bucket, int count, Exception error) {
+            this.bucket = bucket;
+            this.count = count;
+            this.error = error;
+        }
     }
 }
@@ -0,0 +1,215 @@
+package it.smartcommunitylab.minionotificationsmanager.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import it.smartcommunitylab.minionotificationsmanager.common.SystemException;
+import it.smartcommunitylab.minionotificationsmanager.minio.MinioBridge;
+import it.smartcommunitylab.minionotificationsmanager.minio.MinioException;
+import it.smartcommunitylab.minionotificationsmanager.model.EventDTO;
+import it.smartcommunitylab.minionotificationsmanager.routing.Route;
+import it.smartcommunitylab.minionotificationsmanager.routing.RoutingTable;
+
+/*
+ * Periodic sync between manager and Minio, with the same directions as startup
+ * buckets are fingerprinted on both sides and only changed ones are synced
+ */
+@Component
+@ConditionalOnProperty(name = "reconcile.enable", havingValue = "true")
+public class SyncReconciler {
+    private final static Logger _log = LoggerFactory.getLogger(SyncReconciler.class);
+
+    @Autowired
+    private NotificationService service;
+
+    @Autowired
+    private MinioBridge minio;
+
+    @Autowired
+    private RoutingTable routes;
+
+    @Value("${reconcile.concurrency}")
+    private int CONCURRENCY;
+
+    @Value("${startup.sync.export.enable}")
+    private boolean syncExport;
+
+    @Value("${startup.sync.export.clear}")
+    private boolean syncExportClear;
+
+    @Value("${startup.sync.import.enable}")
+    private boolean syncImport;
+
+    @Value("${startup.sync.import.clear}")
+    private boolean syncImportClear;
+
+    // last fingerprint per bucket, after a successful sync
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    // passes run on their own thread, never on the shared task scheduler
+    private ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        _log.debug("init reconciler with concurrency " + String.valueOf(CONCURRENCY));
+
+        // same sanity check as startup, local clear runs after export
+        if (syncExport && syncImport) {
+            syncExportClear = false;
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, CONCURRENCY), r -> {
+            Thread t = new Thread(r, "reconcile-" + String.valueOf(count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        });
+        runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        runner.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${reconcile.interval}", fixedDelayString = "${reconcile.interval}")
+    public void schedule() {
+        if (!syncExport && !syncImport) {
+            return;
+        }
+
+        // hand off, a slow minio must not stall other scheduled tasks
+        // skip when the previous pass is still running
+        if (!running.compareAndSet(false, true)) {
+            _log.debug("reconcile still running, skip");
+            return;
+        }
+
+        try {
+            runner.execute(() -> {
+                try {
+                    reconcile();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            running.set(false);
+        }
+    }
+
+    public void reconcile() {
+
+        long start = System.currentTimeMillis();
+        List<String> buckets;
+        try {
+            buckets = minio.listBuckets();
+        } catch (MinioException mex) {
+            _log.error("error reconcile, list buckets: " + mex.getMessage());
+            return;
+        }
+
+        // forget removed buckets
+        fingerprints.keySet().retainAll(new HashSet<>(buckets));
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (String bucket : buckets) {
+            futures.add(executor.submit(() -> reconcile(bucket)));
+        }
+
+        int changed = 0;
+        try {
+            for (Future<Boolean> f : futures) {
+                if (f.get()) {
+                    changed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // tasks catch their own errors
+            _log.error("error reconcile: " + e.getMessage());
+        }
+
+        _log.debug("reconciled " + String.valueOf(changed) + " of " + String.valueOf(buckets.size())
+                + " buckets in " + String.valueOf(System.currentTimeMillis() - start) + "ms");
+    }
+
+    private boolean reconcile(String bucket) {
+        try {
+            String fingerprint = fingerprint(bucket);
+            if (fingerprint.equals(fingerprints.get(bucket))) {
+                // unchanged on both sides
+                return false;
+            }
+
+            _log.debug("reconcile bucket " + bucket);
+            if (syncExport) {
+                service.syncToMinio(bucket, syncExportClear);
+            }
+            if (syncImport) {
+                service.syncFromMinio(bucket, syncImportClear);
+            }
+
+            // store the state which was synced, not the one read afterwards:
+            // changes landing during sync differ from it and are synced on next run
+            // our own changes cost a single no-op pass
+            fingerprints.put(bucket, fingerprint);
+            return true;
+        } catch (MinioException | SystemException | RuntimeException ex) {
+            // keep previous fingerprint, retry on next run
+            _log.error("error reconcile bucket " + bucket + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private String fingerprint(String bucket) throws MinioException {
+        // hash of sorted topics, from minio config and from local routes
+        // both are served from memory when cached
+        List<String> remote = new ArrayList<>();
+        for (EventDTO e : minio.getEvents(bucket)) {
+            remote.add(e.getTopic());
+        }
+        List<String> local = new ArrayList<>();
+        for (Route r : routes.get(bucket).getRoutes()) {
+            local.add(r.getTopic());
+        }
+
+        remote.sort(null);
+        local.sort(null);
+
+        return DigestUtils.md5Hex(String.join(",", remote) + "|" + String.join(",", local));
+    }
+}
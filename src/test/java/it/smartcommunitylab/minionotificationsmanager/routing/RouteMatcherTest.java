@@ -0,0 +1,149 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+
+/*
+ * Compiled matcher must return exactly the routes selected by
+ * a linear scan with EventDTO matchesAction/matchesPrefix/matchesSuffix
+ */
+public class RouteMatcherTest {
+
+    private static final String BUCKET = "test";
+
+    private static final String[] ACTIONS = {
+            "s3:ObjectCreated:*", "s3:ObjectCreated:Put", "s3:ObjectCreated:Post", "s3:ObjectCreated:Copy",
+            "s3:ObjectCreated:CompleteMultipartUpload", "s3:ObjectRemoved:*", "s3:ObjectRemoved:Delete",
+            "s3:ObjectAccessed:*", "s3:ObjectAccessed:Get", "s3:ObjectAccessed:Head"
+    };
+
+    // events delivered by minio, including names unknown to the client
+    private static final String[] EVENTS = {
+            "s3:ObjectCreated:Put", "s3:ObjectCreated:Post", "s3:ObjectCreated:Copy",
+            "s3:ObjectCreated:CompleteMultipartUpload", "s3:ObjectRemoved:Delete", "s3:ObjectAccessed:Get",
+            "s3:ObjectAccessed:Head", "s3:ObjectCreated:PutRetention", "s3:ObjectRemoved:DeleteMarkerCreated",
+            "s3:Unknown:Event", ""
+    };
+
+    // fixed set, index is position in routes
+    private static final BucketRoutes FIXED = BucketRoutes.build(BUCKET, Arrays.asList(
+            event("", "", "s3:ObjectCreated:*"),
+            event("images/", "", "s3:ObjectCreated:Put"),
+            event("", ".jpg", "s3:ObjectCreated:Put"),
+            event("images/", ".jpg", "s3:ObjectRemoved:*"),
+            event("docs/", ".pdf", "s3:ObjectCreated:*", "s3:ObjectRemoved:Delete"),
+            event("", "", "s3:ObjectAccessed:Get"),
+            event("images/2020/", ".jpg", "s3:ObjectCreated:Put"),
+            event("a", "a", "s3:ObjectCreated:Put")));
+
+    static Stream<Arguments> cases() {
+        return Stream.of(
+                Arguments.of("s3:ObjectCreated:Put", "images/photo.jpg", new int[] { 0, 1, 2 }),
+                Arguments.of("s3:ObjectCreated:Put", "images/2020/photo.jpg", new int[] { 0, 1, 2, 6 }),
+                Arguments.of("s3:ObjectCreated:Put", "images/2020/photo.png", new int[] { 0, 1 }),
+                Arguments.of("s3:ObjectCreated:CompleteMultipartUpload", "images/photo.jpg", new int[] { 0 }),
+                Arguments.of("s3:ObjectRemoved:Delete", "images/photo.jpg", new int[] { 3 }),
+                Arguments.of("s3:ObjectRemoved:Delete", "docs/report.pdf", new int[] { 4 }),
+                Arguments.of("s3:ObjectRemoved:Delete", "docs/report.txt", new int[] {}),
+                Arguments.of("s3:ObjectCreated:Copy", "docs/report.pdf", new int[] { 0, 4 }),
+                Arguments.of("s3:ObjectAccessed:Get", "any/key", new int[] { 5 }),
+                Arguments.of("s3:ObjectAccessed:Head", "any/key", new int[] {}),
+                // unknown names match wildcard registrations only
+                Arguments.of("s3:ObjectCreated:PutRetention", "docs/report.pdf", new int[] { 0, 4 }),
+                Arguments.of("s3:Unknown:Event", "images/photo.jpg", new int[] {}),
+                // empty prefix and suffix match any key, including empty
+                Arguments.of("s3:ObjectCreated:Put", "", new int[] { 0 }),
+                Arguments.of("s3:ObjectCreated:Put", "images", new int[] { 0 }),
+                // prefix and suffix overlapping on short keys
+                Arguments.of("s3:ObjectCreated:Put", "a", new int[] { 0, 7 }),
+                Arguments.of("s3:ObjectCreated:Put", "aba", new int[] { 0, 7 }),
+                Arguments.of("s3:ObjectCreated:Put", "ab", new int[] { 0 }));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    public void matchFixed(String action, String key, int[] expected) {
+        List<Route> routes = FIXED.getRoutes();
+        List<Route> matches = new ArrayList<>();
+        for (int i : expected) {
+            matches.add(routes.get(i));
+        }
+
+        assertEquals(matches, FIXED.match(action, key));
+        assertEquals(matches, scan(FIXED, action, key));
+    }
+
+    @Test
+    public void matchEmpty() {
+        BucketRoutes routes = BucketRoutes.build(BUCKET, new ArrayList<>());
+        assertEquals(0, routes.match("s3:ObjectCreated:Put", "images/photo.jpg").size());
+    }
+
+    @Test
+    public void matchRandom() {
+        // short alphabet to force shared and nested prefixes and suffixes
+        String[] parts = { "", "a", "b", "/", ".", "ab", "a/", ".b" };
+
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+
+            // cross the 64 routes word boundary
+            int count = 1 + random.nextInt(150);
+            List<Event> events = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int n = 1 + random.nextInt(3);
+                String[] actions = new String[n];
+                for (int j = 0; j < n; j++) {
+                    actions[j] = ACTIONS[random.nextInt(ACTIONS.length)];
+                }
+                events.add(event(word(random, parts), word(random, parts), actions));
+            }
+
+            BucketRoutes routes = BucketRoutes.build(BUCKET, events);
+            for (int k = 0; k < 200; k++) {
+                String action = EVENTS[random.nextInt(EVENTS.length)];
+                String key = word(random, parts) + word(random, parts) + word(random, parts);
+
+                assertEquals(scan(routes, action, key), routes.match(action, key),
+                        "seed " + seed + " action " + action + " key " + key);
+            }
+        }
+    }
+
+    private static List<Route> scan(BucketRoutes routes, String action, String key) {
+        return routes.getRoutes().stream()
+                .filter(r -> r.matches(action, key))
+                .collect(Collectors.toList());
+    }
+
+    private static String word(Random random, String[] parts) {
+        StringBuilder sb = new StringBuilder();
+        int n = random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            sb.append(parts[random.nextInt(parts.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static Event event(String prefix, String suffix, String... actions) {
+        Event e = new Event();
+        e.setBucket(BUCKET);
+        e.setPrefix(prefix);
+        e.setSuffix(suffix);
+        e.setActions(Arrays.asList(actions));
+        return e;
+    }
+}
@@ -0,0 +1,170 @@
+package it.smartcommunitylab.minionotificationsmanager.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.smartcommunitylab.minionotificationsmanager.model.Event;
+import it.smartcommunitylab.minionotificationsmanager.repository.EventRepository;
+
+/*
+ * Two tables over the same rows, as two instances sharing the db
+ * changes applied through one must reach the other via refresh
+ */
+public class RoutingTableTest {
+
+    private static final String BUCKET = "test";
+    private static final String ACTION = "s3:ObjectCreated:Put";
+    private static final String KEY = "images/photo.jpg";
+
+    private final List<Event> db = new CopyOnWriteArrayList<>();
+    private long sequence = 0;
+
+    private RoutingTable local;
+    private RoutingTable remote;
+
+    @BeforeEach
+    public void setup() {
+        EventRepository repository = mock(EventRepository.class);
+        when(repository.findAll()).thenAnswer(i -> new ArrayList<>(db));
+        when(repository.findByBucket(anyString())).thenAnswer(i -> db.stream()
+                .filter(e -> e.getBucket().equals(i.getArgument(0)))
+                .collect(Collectors.toList()));
+        when(repository.fingerprintByBucket()).thenAnswer(i -> fingerprints(null));
+        when(repository.fingerprintOfBucket(anyString())).thenAnswer(i -> fingerprints(i.getArgument(0)));
+
+        local = table(repository);
+        remote = table(repository);
+    }
+
+    @Test
+    public void refreshAdded() {
+        String version = local.getVersion(BUCKET);
+
+        // registered via the other instance
+        db.add(event("images/", ".jpg"));
+        remote.rebuild(BUCKET);
+        assertEquals(1, remote.get(BUCKET).match(ACTION, KEY).size());
+        assertTrue(local.get(BUCKET).match(ACTION, KEY).isEmpty());
+
+        assertEquals(1, local.refresh());
+        assertEquals(1, local.get(BUCKET).match(ACTION, KEY).size());
+        assertNotEquals(version, local.getVersion(BUCKET));
+
+        // nothing changed since
+        version = local.getVersion(BUCKET);
+        assertEquals(0, local.refresh());
+        assertEquals(version, local.getVersion(BUCKET));
+    }
+
+    @Test
+    public void refreshRemoved() {
+        db.add(event("images/", ".jpg"));
+        local.rebuild();
+        remote.rebuild();
+
+        db.clear();
+        remote.rebuild(BUCKET);
+
+        assertEquals(1, local.refresh());
+        assertTrue(local.get(BUCKET).isEmpty());
+    }
+
+    @Test
+    public void refreshUpdated() {
+        Event e = event("images/", ".jpg");
+        db.add(e);
+        local.rebuild();
+
+        e.setSuffix(".png");
+        e.setModifiedDate(new Date(e.getModifiedDate().getTime() + 1000));
+
+        assertEquals(1, local.refresh());
+        assertTrue(local.get(BUCKET).match(ACTION, KEY).isEmpty());
+        assertEquals(1, local.get(BUCKET).match(ACTION, "images/photo.png").size());
+    }
+
+    @Test
+    public void refreshDuplicate() {
+        db.add(event("images/", ".jpg"));
+        local.rebuild();
+        remote.rebuild();
+        String localVersion = local.getVersion(BUCKET);
+
+        // same topic, routes unchanged but listing differs
+        db.add(event("images/", ".jpg"));
+        remote.rebuild(BUCKET);
+        String remoteVersion = remote.getVersion(BUCKET);
+
+        assertEquals(1, local.refresh());
+        assertEquals(1, local.get(BUCKET).getRoutes().size());
+        assertNotEquals(localVersion, local.getVersion(BUCKET));
+
+        // already recorded by own rebuild
+        assertEquals(0, remote.refresh());
+        assertEquals(remoteVersion, remote.getVersion(BUCKET));
+    }
+
+    @Test
+    public void refreshLocal() {
+        // own changes are already applied, no version bump
+        db.add(event("images/", ".jpg"));
+        local.rebuild(BUCKET);
+        String version = local.getVersion(BUCKET);
+
+        assertEquals(0, local.refresh());
+        assertEquals(version, local.getVersion(BUCKET));
+    }
+
+    private RoutingTable table(EventRepository repository) {
+        RoutingTable table = new RoutingTable();
+        ReflectionTestUtils.setField(table, "repository", repository);
+        table.init();
+        return table;
+    }
+
+    private Event event(String prefix, String suffix) {
+        Event e = new Event();
+        e.setId(++sequence);
+        e.setBucket(BUCKET);
+        e.setActions(Collections.singletonList(ACTION));
+        e.setPrefix(prefix);
+        e.setSuffix(suffix);
+        e.setModifiedDate(new Date());
+        return e;
+    }
+
+    private List<Object[]> fingerprints(String bucket) {
+        // same aggregates as the repository queries, all buckets when null
+        Map<String, Object[]> rows = new TreeMap<>();
+        for (Event e : db) {
+            if (bucket != null && !bucket.equals(e.getBucket())) {
+                continue;
+            }
+
+            Object[] row = rows.computeIfAbsent(e.getBucket(), b -> new Object[] { b, 0L, 0L, null });
+            row[1] = (Long) row[1] + 1;
+            row[2] = (Long) row[2] + e.getId();
+            if (row[3] == null || e.getModifiedDate().after((Date) row[3])) {
+                row[3] = e.getModifiedDate();
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+}